@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with 1, 8 and 64 threads and the GC profiler, so that both ops/s and {@code
+ * gc.alloc.rate.norm} are reported. Any JMH command line option can be passed to narrow the run,
+ * E.g. {@code java -jar target/benchmarks.jar JdbcBenchmark.preparedStatement -p tracer=noop}.
+ */
+public class BenchmarkRunner {
+
+  private static final int[] THREADS = {1, 8, 64};
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    final CommandLineOptions commandLine = new CommandLineOptions(args);
+    for (int threads : THREADS) {
+      OptionsBuilder builder = new OptionsBuilder();
+      builder.parent(commandLine);
+      if (commandLine.getIncludes().isEmpty()) {
+        builder.include(JdbcBenchmark.class.getSimpleName());
+        builder.include(RawJdbcBenchmark.class.getSimpleName());
+        builder.include(TopStatementsBenchmark.class.getSimpleName());
+      }
+      final Options options = builder
+          .threads(threads)
+          .addProfiler(GCProfiler.class)
+          .resultFormat(ResultFormatType.JSON)
+          .result("jmh-result-" + threads + "-threads.json")
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
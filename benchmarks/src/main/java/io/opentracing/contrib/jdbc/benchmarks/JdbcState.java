@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per thread connection and statements, and the operations measured on them. Subclasses open and
+ * close them once per trial.
+ */
+public abstract class JdbcState {
+
+  static final String URL = "jdbc:h2:mem:benchmarks;DB_CLOSE_DELAY=-1";
+  static final String QUERY = "SELECT id, name FROM bench WHERE id = 1";
+  static final String PREPARED_QUERY = "SELECT id, name FROM bench WHERE id = ? AND name = ?";
+
+  Connection connection;
+  Statement statement;
+  PreparedStatement preparedStatement;
+
+  void open(Database database) throws SQLException {
+    connection = dataSource(database.dataSource).getConnection();
+    statement = connection.createStatement();
+    preparedStatement = connection.prepareStatement(PREPARED_QUERY);
+  }
+
+  /**
+   * @return The data source connections are taken from, wrapping the H2 one.
+   */
+  abstract DataSource dataSource(DataSource h2);
+
+  /**
+   * Called once per benchmark operation.
+   */
+  void operationCompleted() {
+  }
+
+  int statementExecuteQuery() throws SQLException {
+    int id;
+    try (ResultSet resultSet = statement.executeQuery(QUERY)) {
+      resultSet.next();
+      id = resultSet.getInt(1);
+    }
+    operationCompleted();
+    return id;
+  }
+
+  int preparedStatementExecuteQuery() throws SQLException {
+    int id;
+    preparedStatement.setInt(1, 1);
+    preparedStatement.setString(2, "one");
+    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+      resultSet.next();
+      id = resultSet.getInt(1);
+    }
+    operationCompleted();
+    return id;
+  }
+
+  void preparedStatementSetParameters() throws SQLException {
+    preparedStatement.setInt(1, 1);
+    preparedStatement.setString(2, "one");
+    preparedStatement.clearParameters();
+  }
+
+  boolean connectionCreateStatement() throws SQLException {
+    final boolean closed;
+    try (Statement statement = connection.createStatement()) {
+      closed = statement.isClosed();
+    }
+    operationCompleted();
+    return closed;
+  }
+
+  void close() throws SQLException {
+    preparedStatement.close();
+    statement.close();
+    connection.close();
+  }
+
+  /**
+   * The schema is created once per trial, before any thread connects.
+   */
+  @State(Scope.Benchmark)
+  public static class Database {
+    final JdbcDataSource dataSource = new JdbcDataSource();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+      dataSource.setURL(URL);
+      try (Connection connection = dataSource.getConnection();
+          Statement statement = connection.createStatement()) {
+        statement
+            .execute("CREATE TABLE IF NOT EXISTS bench (id INTEGER PRIMARY KEY, name VARCHAR)");
+        statement.execute("MERGE INTO bench VALUES (1, 'one')");
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc.benchmarks;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The operations of {@link JdbcBenchmark} against H2 in-memory without tracing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RawJdbcBenchmark {
+
+  @Benchmark
+  public int statementExecuteQuery(RawJdbcState state) throws SQLException {
+    return state.statementExecuteQuery();
+  }
+
+  @Benchmark
+  public int preparedStatementExecuteQuery(RawJdbcState state) throws SQLException {
+    return state.preparedStatementExecuteQuery();
+  }
+
+  /**
+   * Parameter binding is not traced, this isolates the cost of the wrapper dispatch.
+   */
+  @Benchmark
+  public void preparedStatementSetParameters(RawJdbcState state) throws SQLException {
+    state.preparedStatementSetParameters();
+  }
+
+  @Benchmark
+  public boolean connectionCreateStatement(RawJdbcState state) throws SQLException {
+    return state.connectionCreateStatement();
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc.benchmarks;
+
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Connection to H2 without tracing, the baseline of {@link TracedJdbcState}.
+ */
+@State(Scope.Thread)
+public class RawJdbcState extends JdbcState {
+
+  @Setup(Level.Trial)
+  public void setUp(Database database) throws SQLException {
+    open(database);
+  }
+
+  @Override
+  DataSource dataSource(DataSource h2) {
+    return h2;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    close();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc.benchmarks;
+
+import io.opentracing.contrib.jdbc.JdbcTracing;
+import io.opentracing.contrib.jdbc.JdbcTracingConfig;
+import io.opentracing.contrib.jdbc.TracingDataSource;
+import io.opentracing.noop.NoopTracerFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of tracking the top statements when almost every statement has a new fingerprint, E.g.
+ * generated SQL that cannot be normalized, compared to {@code topStatements=0}. Run with several
+ * threads to measure the contention on the admission of new statements.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopStatementsBenchmark {
+
+  @Benchmark
+  public int executeNewStatement(Config config, ThreadConnection connection)
+      throws SQLException {
+    try (ResultSet resultSet = connection.statement.executeQuery(
+        "SELECT 1 AS c" + config.statements.incrementAndGet())) {
+      resultSet.next();
+      return resultSet.getInt(1);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Config {
+
+    @Param({"0", "100"})
+    public int topStatements;
+
+    final AtomicLong statements = new AtomicLong();
+    private JdbcTracingConfig previous;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      previous = JdbcTracing.getConfig();
+      JdbcTracing.updateConfig(builder -> builder.metricsEnabled(true)
+          .topStatements(topStatements));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      JdbcTracing.setConfig(previous);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadConnection {
+
+    Connection connection;
+    Statement statement;
+
+    @Setup(Level.Trial)
+    public void setUp(Config config) throws SQLException {
+      final JdbcDataSource h2 = new JdbcDataSource();
+      h2.setURL(JdbcState.URL);
+      connection = new TracingDataSource(NoopTracerFactory.create(), h2, null, false,
+          Collections.<String>emptySet()).getConnection();
+      statement = connection.createStatement();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+      statement.close();
+      connection.close();
+    }
+  }
+}
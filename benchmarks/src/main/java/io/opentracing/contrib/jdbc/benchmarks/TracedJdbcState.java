@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc.benchmarks;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.jdbc.JdbcTracing;
+import io.opentracing.contrib.jdbc.TracingDataSource;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracerFactory;
+import java.sql.SQLException;
+import java.util.Collections;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Connection traced with the configured tracer. With {@code withActiveSpanOnly} a parent span is
+ * active on the benchmark thread, so that statements are traced rather than skipped.
+ */
+@State(Scope.Thread)
+public class TracedJdbcState extends JdbcState {
+
+  /**
+   * MockTracer keeps every finished span, it is reset after this many operations.
+   */
+  private static final int MOCK_TRACER_RESET_INTERVAL = 1024;
+
+  @Param({"noop", "mock"})
+  public String tracer;
+
+  @Param({"false", "true"})
+  public boolean withActiveSpanOnly;
+
+  @Param({"true", "false"})
+  public boolean wrapperProxy;
+
+  private Tracer tracerInstance;
+  private MockTracer mockTracer;
+  private int operations;
+  private Span parent;
+  private io.opentracing.Scope parentScope;
+
+  @Setup(Level.Trial)
+  public void setUp(Database database) throws SQLException {
+    switch (tracer) {
+      case "noop":
+        tracerInstance = NoopTracerFactory.create();
+        break;
+      case "mock":
+        mockTracer = new MockTracer();
+        tracerInstance = mockTracer;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown tracer: " + tracer);
+    }
+    JdbcTracing.updateConfig(builder -> builder.wrapperProxyEnabled(wrapperProxy));
+    if (withActiveSpanOnly) {
+      parent = tracerInstance.buildSpan("parent").start();
+      parentScope = tracerInstance.activateSpan(parent);
+    }
+    open(database);
+  }
+
+  @Override
+  DataSource dataSource(DataSource h2) {
+    return new TracingDataSource(tracerInstance, h2, null, withActiveSpanOnly,
+        Collections.<String>emptySet());
+  }
+
+  /**
+   * Bounds the memory held by {@link MockTracer}.
+   */
+  @Override
+  void operationCompleted() {
+    if (mockTracer != null && ++operations == MOCK_TRACER_RESET_INTERVAL) {
+      operations = 0;
+      mockTracer.reset();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    close();
+    if (parentScope != null) {
+      parentScope.close();
+      parent.finish();
+    }
+  }
+}
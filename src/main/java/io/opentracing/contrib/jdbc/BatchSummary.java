@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+/**
+ * Constant memory summary of the SQL commands added to a statement batch: the number of commands
+ * and the distinct statements, grouped by fingerprint, with their multiplicity. Statements are
+ * kept normalized, literals replaced by {@code ?}, as a group stands for commands of different
+ * values. The text of each distinct statement and the rendered summary are truncated to {@link
+ * #MAX_LENGTH} characters.
+ */
+final class BatchSummary {
+
+  /**
+   * Distinct statements kept, further distinct statements are only counted.
+   */
+  static final int MAX_ENTRIES = 16;
+
+  static final int MAX_LENGTH = 4096;
+
+  private final String[] fingerprints = new String[MAX_ENTRIES];
+  private final String[] statements = new String[MAX_ENTRIES];
+  private final int[] counts = new int[MAX_ENTRIES];
+  private int size;
+  private int count;
+  private int others;
+  private String lastSql;
+  private int lastIndex = -1;
+
+  void add(String sql) {
+    count++;
+    if (sql == null) {
+      return;
+    }
+    // Batches commonly repeat the exact same command, skip normalizing it again
+    if (lastIndex >= 0 && sql.equals(lastSql)) {
+      counts[lastIndex]++;
+      return;
+    }
+    final int index = indexOf(sql);
+    if (index < 0) {
+      others++;
+      return;
+    }
+    counts[index]++;
+    lastSql = sql;
+    lastIndex = index;
+  }
+
+  private int indexOf(String sql) {
+    final String normalized = SqlNormalizer.normalizeText(sql);
+    final String fingerprint = new NormalizedSql(normalized).getFingerprint();
+    for (int i = 0; i < size; i++) {
+      if (fingerprints[i].equals(fingerprint)) {
+        return i;
+      }
+    }
+    if (size == MAX_ENTRIES) {
+      return -1;
+    }
+    fingerprints[size] = fingerprint;
+    statements[size] = normalized.length() > MAX_LENGTH
+        ? normalized.substring(0, MAX_LENGTH) : normalized;
+    return size++;
+  }
+
+  /**
+   * @return The number of commands added since the last {@link #clear()}.
+   */
+  int getCount() {
+    return count;
+  }
+
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      fingerprints[i] = null;
+      statements[i] = null;
+      counts[i] = 0;
+    }
+    size = 0;
+    count = 0;
+    others = 0;
+    lastSql = null;
+    lastIndex = -1;
+  }
+
+  /**
+   * Append the distinct normalized statements separated by {@code ;}, each prefixed by a comment
+   * with its multiplicity when repeated.
+   */
+  void appendTo(StringBuilder sql) {
+    final int limit = sql.length() + MAX_LENGTH;
+    for (int i = 0; i < size && sql.length() < limit; i++) {
+      if (sql.length() > 0) {
+        sql.append("; ");
+      }
+      if (counts[i] > 1) {
+        sql.append("/* ").append(counts[i]).append("x */ ");
+      }
+      sql.append(statements[i]);
+    }
+    if (others > 0) {
+      sql.append("; /* ").append(others).append(" more */");
+    }
+    if (sql.length() > limit) {
+      sql.setLength(limit);
+    }
+  }
+}
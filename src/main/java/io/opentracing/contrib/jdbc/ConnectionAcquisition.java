@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounts the connection acquisitions of a data source, whether they are traced or not.
+ */
+final class ConnectionAcquisition implements ConnectionAcquisitionMXBean {
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final LongAccumulator peakWaiting = new LongAccumulator(Math::max, 0);
+  private final LongAdder saturated = new LongAdder();
+
+  /**
+   * Called when a thread starts waiting for a connection.
+   *
+   * @return The number of threads waiting, including the caller.
+   */
+  int enter() {
+    final int waiters = waiting.incrementAndGet();
+    peakWaiting.accumulate(waiters);
+    return waiters;
+  }
+
+  /**
+   * Called when a thread got a connection or failed to.
+   */
+  void exit(long durationNanos, JdbcTracingConfig config) {
+    waiting.decrementAndGet();
+    latency.record(durationNanos);
+    if (isSaturated(durationNanos, config)) {
+      saturated.increment();
+    }
+  }
+
+  static boolean isSaturated(long durationNanos, JdbcTracingConfig config) {
+    return config.getPoolSaturationThresholdMs() > 0
+        && durationNanos > config.getPoolSaturationThresholdNanos();
+  }
+
+  @Override
+  public int getWaitingThreads() {
+    return waiting.get();
+  }
+
+  @Override
+  public int getPeakWaitingThreads() {
+    return (int) peakWaiting.get();
+  }
+
+  @Override
+  public long getSaturatedCount() {
+    return saturated.sum();
+  }
+
+  @Override
+  public long getCount() {
+    return latency.getCount();
+  }
+
+  @Override
+  public long getP50Micros() {
+    return latency.getP50Micros();
+  }
+
+  @Override
+  public long getP99Micros() {
+    return latency.getP99Micros();
+  }
+
+  @Override
+  public long getP999Micros() {
+    return latency.getP999Micros();
+  }
+
+  @Override
+  public long getMaxMicros() {
+    return latency.getMaxMicros();
+  }
+}
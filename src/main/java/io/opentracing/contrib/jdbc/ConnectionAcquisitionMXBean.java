@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+/**
+ * Connection acquisitions of a {@link TracingDataSource}: their latency, in microseconds, and how
+ * many threads wait for a connection.
+ */
+public interface ConnectionAcquisitionMXBean extends LatencyHistogramMXBean {
+
+  /**
+   * @return The number of threads currently waiting for a connection.
+   */
+  int getWaitingThreads();
+
+  /**
+   * @return The highest number of threads that waited for a connection at the same time.
+   */
+  int getPeakWaitingThreads();
+
+  /**
+   * @return The number of acquisitions that waited longer than {@link
+   * JdbcTracingConfig#getPoolSaturationThresholdMs()}.
+   */
+  long getSaturatedCount();
+}
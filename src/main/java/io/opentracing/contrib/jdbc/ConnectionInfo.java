@@ -13,6 +13,11 @@
  */
 package io.opentracing.contrib.jdbc;
 
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+import java.util.ArrayList;
+import java.util.List;
+
 public class ConnectionInfo {
 
   public static ConnectionInfo UNKNOWN_CONNECTION_INFO = new Builder("unknown_peer")
@@ -24,6 +29,12 @@ public class ConnectionInfo {
   private final String dbPeer;
   private final String dbPeerService;
 
+  /**
+   * Pre-validated span tags as alternating key/value pairs, shared by every span of the
+   * connection.
+   */
+  private final String[] spanTags;
+
   private ConnectionInfo(String dbType, String dbUser, String dbInstance, String dbHost,
       Integer dbPort) {
     this.dbType = dbType;
@@ -36,6 +47,7 @@ public class ConnectionInfo {
     }
 
     this.dbPeerService = makePeerService();
+    this.spanTags = makeSpanTags();
   }
 
   private ConnectionInfo(String dbType, String dbUser, String dbInstance, String dbPeer) {
@@ -45,6 +57,7 @@ public class ConnectionInfo {
     this.dbPeer = dbPeer;
 
     this.dbPeerService = makePeerService();
+    this.spanTags = makeSpanTags();
   }
 
   /**
@@ -58,6 +71,37 @@ public class ConnectionInfo {
     }
   }
 
+  /**
+   * Collect the span tags once. Skip empty tags to avoid reported NPE in tracers.
+   */
+  private String[] makeSpanTags() {
+    List<String> tags = new ArrayList<>(12);
+    addSpanTag(tags, Tags.COMPONENT.getKey(), JdbcTracingUtils.COMPONENT_NAME);
+    addSpanTag(tags, Tags.DB_TYPE.getKey(), dbType);
+    addSpanTag(tags, JdbcTracingUtils.PEER_ADDRESS.getKey(), dbPeer);
+    addSpanTag(tags, Tags.DB_INSTANCE.getKey(), dbInstance);
+    addSpanTag(tags, Tags.DB_USER.getKey(), dbUser);
+    addSpanTag(tags, Tags.PEER_SERVICE.getKey(), dbPeerService);
+    return tags.toArray(new String[0]);
+  }
+
+  private static void addSpanTag(List<String> tags, String key, String value) {
+    if (value != null && !value.isEmpty()) {
+      tags.add(key);
+      tags.add(value);
+    }
+  }
+
+  /**
+   * Apply the precomputed connection tags to the span in a single pass.
+   */
+  void decorate(Span span) {
+    final String[] tags = spanTags;
+    for (int i = 0; i < tags.length; i += 2) {
+      span.setTag(tags[i], tags[i + 1]);
+    }
+  }
+
   public String getDbType() {
     return dbType;
   }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+
+/**
+ * Tracks connections from their creation to {@link TracingConnection#close()} with weak
+ * references, so that a leaked connection can still be garbage collected. A daemon thread logs
+ * the connections held longer than {@link JdbcTracingConfig#getLeakDetectionThresholdMs()} and
+ * those garbage collected without being closed. The thread stops once detection is disabled and
+ * the connections it tracked are closed or collected, and its JMX MBean is unregistered meanwhile,
+ * so that neither pins the class loader. Only opening and closing a connection cost
+ * anything, statements are not affected.
+ */
+final class ConnectionLeakDetector implements ConnectionLeaksMXBean {
+
+  private static final Logger log = Logger.getLogger(ConnectionLeakDetector.class.getName());
+
+  private static final long MIN_CHECK_INTERVAL_MS = 10;
+  private static final long MAX_CHECK_INTERVAL_MS = 1000;
+
+  static final ConnectionLeakDetector INSTANCE = new ConnectionLeakDetector();
+
+  private final ReferenceQueue<TracingConnection> queue = new ReferenceQueue<>();
+  private final Set<Tracked> tracked = ConcurrentHashMap.newKeySet();
+  private final LongAdder longHeld = new LongAdder();
+  private final LongAdder unclosed = new LongAdder();
+  private volatile boolean started;
+  /**
+   * The MBean registered while the thread runs, or {@code null}.
+   */
+  private ObjectName name;
+
+  private ConnectionLeakDetector() {
+  }
+
+  /**
+   * @return The handle to pass to {@link #closed(Tracked)}, {@code null} if leak detection is
+   * disabled.
+   */
+  Tracked track(TracingConnection connection, ConnectionInfo connectionInfo) {
+    final JdbcTracingConfig config = JdbcTracing.getConfig();
+    if (config.getLeakDetectionThresholdMs() <= 0) {
+      return null;
+    }
+    final Throwable openedAt =
+        ThreadLocalRandom.current().nextDouble() < config.getLeakStackTraceSampleRate()
+            ? new Throwable("Connection opened here") : null;
+    final Tracked handle = new Tracked(connection, queue, connectionInfo.getPeerService(),
+        openedAt);
+    // tracked before checking the thread, which re-checks the tracked connections once stopped
+    tracked.add(handle);
+    if (!started) {
+      start();
+    }
+    return handle;
+  }
+
+  void closed(Tracked handle) {
+    if (handle != null && tracked.remove(handle)) {
+      handle.clear();
+    }
+  }
+
+  boolean isStarted() {
+    return started;
+  }
+
+  private synchronized void start() {
+    if (started) {
+      return;
+    }
+    final Thread thread = new Thread(this::run, "opentracing-jdbc-leak-detector");
+    thread.setDaemon(true);
+    started = true;
+    thread.start();
+    if (name == null) {
+      name = JdbcMetrics.register(this, ConnectionLeaksMXBean.class, "type=ConnectionLeaks");
+    }
+  }
+
+  /**
+   * Stop the thread and unregister the MBean when detection is disabled and no connection is
+   * tracked anymore, so that the thread neither wakes up for nothing nor pins its class loader.
+   *
+   * @return Whether the thread stopped.
+   */
+  private synchronized boolean stopIfIdle() {
+    if (!tracked.isEmpty()) {
+      return false;
+    }
+    started = false;
+    if (tracked.isEmpty()) {
+      unregister();
+      return true;
+    }
+    // a connection was tracked meanwhile, saw the thread still started
+    started = true;
+    return false;
+  }
+
+  private void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        final long thresholdMs = JdbcTracing.getConfig().getLeakDetectionThresholdMs();
+        if (thresholdMs <= 0 && stopIfIdle()) {
+          return;
+        }
+        final long intervalMs = thresholdMs <= 0 ? MAX_CHECK_INTERVAL_MS
+            : Math.max(MIN_CHECK_INTERVAL_MS, Math.min(MAX_CHECK_INTERVAL_MS, thresholdMs / 2));
+        for (Reference<? extends TracingConnection> reference = queue.remove(intervalMs);
+            reference != null; reference = queue.poll()) {
+          if (tracked.remove(reference)) {
+            unclosed.increment();
+            report((Tracked) reference, "was garbage collected without being closed");
+          }
+        }
+        if (thresholdMs > 0) {
+          checkLongHeld(TimeUnit.MILLISECONDS.toNanos(thresholdMs));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        log.log(Level.WARNING, "Connection leak check failed", e);
+      }
+    }
+    synchronized (this) {
+      started = false;
+      unregister();
+    }
+  }
+
+  private void unregister() {
+    if (name != null) {
+      JdbcMetrics.unregister(name);
+      name = null;
+    }
+  }
+
+  private void checkLongHeld(long thresholdNanos) {
+    final long now = System.nanoTime();
+    for (Tracked handle : tracked) {
+      final long heldNanos = now - handle.openedNanos;
+      if (!handle.reported && heldNanos > thresholdNanos) {
+        handle.reported = true;
+        longHeld.increment();
+        report(handle, "is held for " + TimeUnit.NANOSECONDS.toMillis(heldNanos) + " ms");
+      }
+    }
+  }
+
+  private static void report(Tracked handle, String problem) {
+    if (handle.openedAt == null) {
+      log.warning("Connection to " + handle.peerService + " " + problem
+          + ", its opening stack trace was not sampled");
+    } else {
+      log.log(Level.WARNING, "Connection to " + handle.peerService + " " + problem,
+          handle.openedAt);
+    }
+  }
+
+  @Override
+  public int getOpenConnections() {
+    return tracked.size();
+  }
+
+  @Override
+  public long getLongHeldConnections() {
+    return longHeld.sum();
+  }
+
+  @Override
+  public long getUnclosedConnections() {
+    return unclosed.sum();
+  }
+
+  static final class Tracked extends WeakReference<TracingConnection> {
+    private final long openedNanos = System.nanoTime();
+    private final String peerService;
+    private final Throwable openedAt;
+    /**
+     * Only accessed by the checking thread.
+     */
+    private boolean reported;
+
+    private Tracked(TracingConnection connection, ReferenceQueue<TracingConnection> queue,
+        String peerService, Throwable openedAt) {
+      super(connection, queue);
+      this.peerService = peerService;
+      this.openedAt = openedAt;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+/**
+ * Connections tracked while {@link JdbcTracingConfig#getLeakDetectionThresholdMs()} is positive.
+ */
+public interface ConnectionLeaksMXBean {
+
+  /**
+   * @return The number of tracked connections not closed yet.
+   */
+  int getOpenConnections();
+
+  /**
+   * @return The number of connections reported as held longer than the threshold.
+   */
+  long getLongHeldConnections();
+
+  /**
+   * @return The number of connections garbage collected without being closed.
+   */
+  long getUnclosedConnections();
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code ignoreStatements} rules compiled once, so that checking a statement does not depend on
+ * the number of rules. A rule is one of:
+ * <ul>
+ * <li>{@code SELECT 1}: the statement is exactly this SQL,</li>
+ * <li>{@code prefix:SELECT 1}: the statement starts with this SQL,</li>
+ * <li>{@code regex:flyway_schema_history}: the statement contains a match of this regular
+ * expression,</li>
+ * <li>{@code fingerprint:SELECT * FROM t WHERE id = 1}: the statement has the same fingerprint as
+ * this SQL once literals are normalized, the fingerprint itself can be given instead of the
+ * SQL.</li>
+ * </ul>
+ * Prefix rules are indexed in a trie and regular expressions are combined in a single pattern. The
+ * decision for statements that are not an exact match is cached per distinct SQL.
+ *
+ * <p>{@link #contains(Object)} tells whether a statement matches any rule, iterating returns the
+ * rules.
+ */
+final class IgnoreStatementMatcher extends AbstractSet<String> {
+
+  static final String PREFIX = "prefix:";
+  static final String REGEX = "regex:";
+  static final String FINGERPRINT = "fingerprint:";
+
+  private static final int CACHE_SIZE = 512;
+
+  /**
+   * Longer statements are matched on every call rather than pinned in the cache.
+   */
+  private static final int MAX_CACHED_LENGTH = 4 * 1024;
+
+  private final Set<String> rules;
+  private final Set<String> exact = new HashSet<>();
+  private final Node prefixes = new Node();
+  private final Pattern pattern;
+  private final Set<String> fingerprints = new HashSet<>();
+  private final LruCache<String, Boolean> decisions = new LruCache<>(CACHE_SIZE);
+
+  private IgnoreStatementMatcher(Set<String> rules) {
+    this.rules = rules;
+    final List<String> regexes = new ArrayList<>();
+    for (String rule : rules) {
+      if (rule.startsWith(PREFIX)) {
+        prefixes.add(rule.substring(PREFIX.length()));
+      } else if (rule.startsWith(REGEX)) {
+        regexes.add("(?:" + rule.substring(REGEX.length()) + ")");
+      } else if (rule.startsWith(FINGERPRINT)) {
+        fingerprints.add(fingerprint(rule.substring(FINGERPRINT.length())));
+      } else {
+        exact.add(rule);
+      }
+    }
+    this.pattern = regexes.isEmpty() ? null : Pattern.compile(String.join("|", regexes));
+  }
+
+  /**
+   * Compile the rules. Sets without prefix, regex or fingerprint rules are returned unchanged, as a
+   * hash lookup already matches them in a single step.
+   *
+   * @throws java.util.regex.PatternSyntaxException If a regular expression is invalid.
+   */
+  static Set<String> compile(Set<String> rules) {
+    if (rules == null || rules instanceof IgnoreStatementMatcher) {
+      return rules;
+    }
+    for (String rule : rules) {
+      if (rule.startsWith(PREFIX) || rule.startsWith(REGEX) || rule.startsWith(FINGERPRINT)) {
+        return new IgnoreStatementMatcher(new HashSet<>(rules));
+      }
+    }
+    return rules;
+  }
+
+  private static String fingerprint(String rule) {
+    if (rule.length() == 16 && rule.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+      return rule.toLowerCase();
+    }
+    return SqlNormalizer.normalize(rule).getFingerprint();
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof String)) {
+      return false;
+    }
+    final String sql = (String) o;
+    if (exact.contains(sql)) {
+      return true;
+    }
+    if (sql.length() > MAX_CACHED_LENGTH) {
+      return matches(sql);
+    }
+    Boolean decision = decisions.get(sql);
+    if (decision == null) {
+      decision = matches(sql);
+      decisions.put(sql, decision);
+    }
+    return decision;
+  }
+
+  private boolean matches(String sql) {
+    return prefixes.matchesPrefixOf(sql)
+        || (pattern != null && pattern.matcher(sql).find())
+        || (!fingerprints.isEmpty()
+        && fingerprints.contains(SqlNormalizer.normalize(sql).getFingerprint()));
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return rules.iterator();
+  }
+
+  @Override
+  public int size() {
+    return rules.size();
+  }
+
+  /**
+   * Trie node, children are looked up by a linear scan as prefixes of SQL statements branch
+   * little.
+   */
+  private static final class Node {
+    private char[] keys = new char[0];
+    private Node[] children = new Node[0];
+    private boolean terminal;
+
+    void add(String prefix) {
+      Node node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        node = node.childOrCreate(prefix.charAt(i));
+      }
+      node.terminal = true;
+    }
+
+    boolean matchesPrefixOf(String sql) {
+      Node node = this;
+      for (int i = 0; !node.terminal; i++) {
+        if (i == sql.length() || (node = node.child(sql.charAt(i))) == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private Node child(char c) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == c) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    private Node childOrCreate(char c) {
+      Node child = child(c);
+      if (child == null) {
+        child = new Node();
+        keys = Arrays.copyOf(keys, keys.length + 1);
+        children = Arrays.copyOf(children, children.length + 1);
+        keys[keys.length - 1] = c;
+        children[children.length - 1] = child;
+      }
+      return child;
+    }
+  }
+}
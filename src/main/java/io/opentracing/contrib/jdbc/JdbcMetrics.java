@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Latency histograms of the JDBC calls per database ({@link ConnectionInfo#getPeerService()}) and
+ * operation ({@code Query}, {@code Update}, {@code Commit}, {@code AcquireConnection}...),
+ * recorded when {@link JdbcTracingConfig#isMetricsEnabled()}, whether a span is created or not.
+ * Each histogram is also registered in the platform MBean server as {@code
+ * io.opentracing.contrib.jdbc:type=Latency,peer=...,operation=...}.
+ *
+ * <p>When {@link JdbcTracingConfig#getTopStatements()} is positive, the statements consuming the
+ * most database time are also tracked, see {@link #getTopStatements()}. Connection leaks are
+ * counted by {@link #getConnectionLeaks()}.
+ *
+ * <p>{@link #reset()} unregisters these MBeans, E.g. when the application is undeployed.
+ */
+public final class JdbcMetrics {
+
+  private static final Logger log = Logger.getLogger(JdbcMetrics.class.getName());
+
+  static final String DOMAIN = "io.opentracing.contrib.jdbc";
+
+  /**
+   * Histograms kept, calls of further database and operation pairs are not recorded.
+   */
+  private static final int MAX_HISTOGRAMS = 1024;
+
+  private static final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> latencies =
+      new ConcurrentHashMap<>();
+  private static final AtomicInteger size = new AtomicInteger();
+  /**
+   * The MBeans registered for the latencies and the top statements, unregistered by {@link
+   * #reset()}.
+   */
+  private static final Queue<ObjectName> registered = new ConcurrentLinkedQueue<>();
+
+  private static volatile TopStatements topStatements;
+
+  private JdbcMetrics() {
+  }
+
+  /**
+   * @return The latency of the operation on the database, or {@code null} if none was recorded.
+   */
+  public static LatencyHistogramMXBean getLatency(String peerService, String operationName) {
+    final Map<String, LatencyHistogram> operations = latencies.get(peerService);
+    return operations == null ? null : operations.get(operationName);
+  }
+
+  /**
+   * @return The latencies recorded so far, by database and operation.
+   */
+  public static Map<String, Map<String, LatencyHistogramMXBean>> getLatencies() {
+    final Map<String, Map<String, LatencyHistogramMXBean>> result = new HashMap<>();
+    latencies.forEach((peer, operations) -> result.put(peer,
+        Collections.unmodifiableMap(new HashMap<String, LatencyHistogramMXBean>(operations))));
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * @return The statements that consumed the most database time recently, by decreasing total
+   * time. Empty unless {@link JdbcTracingConfig#getTopStatements()} is positive.
+   */
+  public static List<StatementStatistics> getTopStatements() {
+    final TopStatements top = topStatements;
+    return top == null ? Collections.emptyList() : top.getTopStatements();
+  }
+
+  /**
+   * @return The counts of the connection leak detection, enabled by {@link
+   * JdbcTracingConfig#getLeakDetectionThresholdMs()}.
+   */
+  public static ConnectionLeaksMXBean getConnectionLeaks() {
+    return ConnectionLeakDetector.INSTANCE;
+  }
+
+  /**
+   * Unregisters the MBeans of the latencies and of the top statements, and discards what was
+   * recorded. Call it when the application stops, E.g. from {@code
+   * ServletContextListener.contextDestroyed}, so that the platform MBean server does not keep the
+   * class loader of an undeployed application, nor prevent its next deployment from registering
+   * its MBeans.
+   */
+  public static synchronized void reset() {
+    latencies.clear();
+    size.set(0);
+    topStatements = null;
+    ObjectName name;
+    while ((name = registered.poll()) != null) {
+      unregister(name);
+    }
+  }
+
+  static void recordStatement(NormalizedSql sql, long durationNanos, int maxStatements) {
+    TopStatements top = topStatements;
+    if (top == null || top.getSize() != maxStatements) {
+      top = topStatements(maxStatements);
+    }
+    top.record(sql, durationNanos);
+  }
+
+  private static synchronized TopStatements topStatements(int maxStatements) {
+    TopStatements top = topStatements;
+    if (top == null || top.getSize() != maxStatements) {
+      final boolean registered = top != null;
+      top = new TopStatements(maxStatements);
+      topStatements = top;
+      if (!registered) {
+        registerMetric(new TopStatementsView(), TopStatementsMXBean.class, "type=TopStatements");
+      }
+    }
+    return top;
+  }
+
+  static void record(ConnectionInfo connectionInfo, String operationName, long durationNanos) {
+    final LatencyHistogram histogram = histogram(connectionInfo.getPeerService(), operationName);
+    if (histogram != null) {
+      histogram.record(durationNanos);
+    }
+  }
+
+  private static LatencyHistogram histogram(String peerService, String operationName) {
+    ConcurrentMap<String, LatencyHistogram> operations = latencies.get(peerService);
+    if (operations == null) {
+      operations = latencies.computeIfAbsent(peerService, key -> new ConcurrentHashMap<>());
+    }
+    LatencyHistogram histogram = operations.get(operationName);
+    if (histogram != null || size.get() >= MAX_HISTOGRAMS) {
+      return histogram;
+    }
+    final LatencyHistogram created = new LatencyHistogram();
+    histogram = operations.putIfAbsent(operationName, created);
+    if (histogram != null) {
+      return histogram;
+    }
+    size.incrementAndGet();
+    // registered once inserted, not while holding the lock of the map
+    registerMetric(created, LatencyHistogramMXBean.class, "type=Latency,peer="
+        + ObjectName.quote(peerService) + ",operation=" + ObjectName.quote(operationName));
+    return created;
+  }
+
+  private static <T> void registerMetric(T mbean, Class<T> mbeanInterface, String properties) {
+    final ObjectName name = register(mbean, mbeanInterface, properties);
+    if (name != null) {
+      registered.add(name);
+    }
+  }
+
+  /**
+   * Follows the tracker replaced when its size is changed.
+   */
+  private static final class TopStatementsView implements TopStatementsMXBean {
+    @Override
+    public List<StatementStatistics> getTopStatements() {
+      return JdbcMetrics.getTopStatements();
+    }
+  }
+
+  /**
+   * Register a MBean under the domain of this library. Failures, E.g. when several class loaders
+   * load this library, only lose the JMX view.
+   *
+   * @return The name of the registered MBean, {@code null} if it could not be registered.
+   */
+  static <T> ObjectName register(T mbean, Class<T> mbeanInterface, String properties) {
+    try {
+      final ObjectName name = new ObjectName(DOMAIN + ':' + properties);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(
+          new StandardMBean(mbean, mbeanInterface, true), name);
+      return name;
+    } catch (Exception | LinkageError e) {
+      log.log(Level.FINE, "Could not register MBean " + properties, e);
+      return null;
+    }
+  }
+
+  static void unregister(ObjectName name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (Exception | LinkageError e) {
+      log.log(Level.FINE, "Could not unregister MBean " + name, e);
+    }
+  }
+}
@@ -13,8 +13,45 @@
  */
 package io.opentracing.contrib.jdbc;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
 public class JdbcTracing {
-  private static boolean traceEnabled = true;
+
+  /**
+   * can be modified by application code, either as a whole or one property at a time
+   */
+  private static final AtomicReference<JdbcTracingConfig> config = new AtomicReference<>(
+      JdbcTracingConfig.fromSystemProperties());
+
+  /**
+   * @return The current configuration snapshot.
+   */
+  public static JdbcTracingConfig getConfig() {
+    return config.get();
+  }
+
+  /**
+   * Replaces the whole configuration. Statements started after this call observe the new values.
+   *
+   * @param config The new configuration.
+   */
+  public static void setConfig(JdbcTracingConfig config) {
+    if (config == null) {
+      throw new IllegalArgumentException("config can not be null");
+    }
+    JdbcTracing.config.set(config);
+  }
+
+  /**
+   * Atomically derives a new configuration from the current one.
+   *
+   * @param update Function applied to a builder initialized with the current configuration.
+   * @return The configuration that was published.
+   */
+  public static JdbcTracingConfig updateConfig(UnaryOperator<JdbcTracingConfig.Builder> update) {
+    return config.updateAndGet(current -> update.apply(current.toBuilder()).build());
+  }
 
   /**
    * Sets the {@code traceEnabled} property to enable or disable traces.
@@ -22,36 +59,35 @@ public class JdbcTracing {
    * @param traceEnabled The {@code traceEnabled} value.
    */
   public static void setTraceEnabled(boolean traceEnabled) {
-    JdbcTracing.traceEnabled = traceEnabled;
+    updateConfig(builder -> builder.traceEnabled(traceEnabled));
   }
 
   public static boolean isTraceEnabled() {
-    return JdbcTracing.traceEnabled;
+    return getConfig().isTraceEnabled();
   }
 
-  /**
-   * can be modified by application code
-   */
-  private static int slowQueryThresholdMs = Integer
-      .getInteger("io.opentracing.contrib.jdbc.slowQueryThresholdMs", 0);
-
   public static int getSlowQueryThresholdMs() {
-    return slowQueryThresholdMs;
+    return getConfig().getSlowQueryThresholdMs();
   }
 
   public static void setSlowQueryThresholdMs(final int slowQueryThresholdMs) {
-    JdbcTracing.slowQueryThresholdMs = slowQueryThresholdMs;
+    updateConfig(builder -> builder.slowQueryThresholdMs(slowQueryThresholdMs));
   }
 
-  private static int excludeFastQueryThresholdMs = Integer
-      .getInteger("io.opentracing.contrib.jdbc.excludeFastQueryThresholdMs", 0);
-
   public static int getExcludeFastQueryThresholdMs() {
-    return excludeFastQueryThresholdMs;
+    return getConfig().getExcludeFastQueryThresholdMs();
   }
 
   public static void setExcludeFastQueryThresholdMs(final int excludeFastQueryThresholdMs) {
-    JdbcTracing.excludeFastQueryThresholdMs = excludeFastQueryThresholdMs;
+    updateConfig(builder -> builder.excludeFastQueryThresholdMs(excludeFastQueryThresholdMs));
+  }
+
+  /**
+   * @return The number of spans that were not created because {@code maxSpansPerSecond} was
+   * exceeded.
+   */
+  public static long getRateLimitedSpans() {
+    return SpanRateLimiter.getDroppedSpans();
   }
 
 }
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of the global JDBC tracing settings. A snapshot is published atomically by
+ * {@link JdbcTracing#setConfig(JdbcTracingConfig)} and read once per traced statement.
+ */
+public final class JdbcTracingConfig {
+
+  static final int DEFAULT_MAX_OPERATION_NAMES = 200;
+  static final double DEFAULT_LEAK_STACK_TRACE_SAMPLE_RATE = 0.01;
+
+  private final boolean traceEnabled;
+  private final int slowQueryThresholdMs;
+  private final int excludeFastQueryThresholdMs;
+  private final boolean wrapperProxyEnabled;
+  private final boolean lazyStatementTag;
+  private final int maxSpansPerSecond;
+  private final boolean rateLimitPerPeer;
+  private final SpanRateLimiter rateLimiter;
+  private final boolean normalizeStatements;
+  private final boolean aggregateStatements;
+  private final boolean traceResultSets;
+  private final boolean sqlOperationNames;
+  private final int maxOperationNames;
+  private final boolean metricsEnabled;
+  private final int topStatements;
+  private final int poolSaturationThresholdMs;
+  private final int leakDetectionThresholdMs;
+  private final double leakStackTraceSampleRate;
+  private final boolean traceTransactions;
+  private final long slowQueryThresholdNanos;
+  private final long excludeFastQueryThresholdNanos;
+  private final long poolSaturationThresholdNanos;
+
+  private JdbcTracingConfig(Builder builder) {
+    this.traceEnabled = builder.traceEnabled;
+    this.slowQueryThresholdMs = builder.slowQueryThresholdMs;
+    this.excludeFastQueryThresholdMs = builder.excludeFastQueryThresholdMs;
+    this.wrapperProxyEnabled = builder.wrapperProxyEnabled;
+    this.lazyStatementTag = builder.lazyStatementTag;
+    this.maxSpansPerSecond = builder.maxSpansPerSecond;
+    this.rateLimitPerPeer = builder.rateLimitPerPeer;
+    this.rateLimiter = builder.rateLimiter(maxSpansPerSecond, rateLimitPerPeer);
+    this.normalizeStatements = builder.normalizeStatements;
+    this.aggregateStatements = builder.aggregateStatements;
+    this.traceResultSets = builder.traceResultSets;
+    this.sqlOperationNames = builder.sqlOperationNames;
+    this.maxOperationNames = builder.maxOperationNames;
+    this.metricsEnabled = builder.metricsEnabled;
+    this.topStatements = builder.topStatements;
+    this.poolSaturationThresholdMs = builder.poolSaturationThresholdMs;
+    this.leakDetectionThresholdMs = builder.leakDetectionThresholdMs;
+    this.leakStackTraceSampleRate = builder.leakStackTraceSampleRate;
+    this.traceTransactions = builder.traceTransactions;
+    this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMs);
+    this.excludeFastQueryThresholdNanos = TimeUnit.MILLISECONDS
+        .toNanos(excludeFastQueryThresholdMs);
+    this.poolSaturationThresholdNanos = TimeUnit.MILLISECONDS.toNanos(poolSaturationThresholdMs);
+  }
+
+  /**
+   * @return The configuration defined by the {@code io.opentracing.contrib.jdbc.*} system
+   * properties.
+   */
+  static JdbcTracingConfig fromSystemProperties() {
+    return new Builder()
+        .slowQueryThresholdMs(
+            Integer.getInteger("io.opentracing.contrib.jdbc.slowQueryThresholdMs", 0))
+        .excludeFastQueryThresholdMs(
+            Integer.getInteger("io.opentracing.contrib.jdbc.excludeFastQueryThresholdMs", 0))
+        .wrapperProxyEnabled(Boolean.parseBoolean(
+            System.getProperty("io.opentracing.contrib.jdbc.wrapperProxyEnabled", "true")))
+        .lazyStatementTag(Boolean.getBoolean("io.opentracing.contrib.jdbc.lazyStatementTag"))
+        .maxSpansPerSecond(Integer.getInteger("io.opentracing.contrib.jdbc.maxSpansPerSecond", 0))
+        .rateLimitPerPeer(Boolean.getBoolean("io.opentracing.contrib.jdbc.rateLimitPerPeer"))
+        .normalizeStatements(Boolean.getBoolean("io.opentracing.contrib.jdbc.normalizeStatements"))
+        .aggregateStatements(Boolean.getBoolean("io.opentracing.contrib.jdbc.aggregateStatements"))
+        .traceResultSets(Boolean.getBoolean("io.opentracing.contrib.jdbc.traceResultSets"))
+        .sqlOperationNames(Boolean.getBoolean("io.opentracing.contrib.jdbc.sqlOperationNames"))
+        .maxOperationNames(Integer.getInteger("io.opentracing.contrib.jdbc.maxOperationNames",
+            DEFAULT_MAX_OPERATION_NAMES))
+        .metricsEnabled(Boolean.getBoolean("io.opentracing.contrib.jdbc.metricsEnabled"))
+        .topStatements(Integer.getInteger("io.opentracing.contrib.jdbc.topStatements", 0))
+        .poolSaturationThresholdMs(Integer.getInteger(
+            "io.opentracing.contrib.jdbc.poolSaturationThresholdMs", 0))
+        .leakDetectionThresholdMs(Integer.getInteger(
+            "io.opentracing.contrib.jdbc.leakDetectionThresholdMs", 0))
+        .leakStackTraceSampleRate(getDouble("io.opentracing.contrib.jdbc.leakStackTraceSampleRate",
+            DEFAULT_LEAK_STACK_TRACE_SAMPLE_RATE))
+        .traceTransactions(Boolean.getBoolean("io.opentracing.contrib.jdbc.traceTransactions"))
+        .build();
+  }
+
+  /**
+   * Like {@link Integer#getInteger(String, int)}, a missing or malformed property yields the
+   * default value.
+   */
+  static double getDouble(String name, double defaultValue) {
+    final String value = System.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  public boolean isTraceEnabled() {
+    return traceEnabled;
+  }
+
+  public int getSlowQueryThresholdMs() {
+    return slowQueryThresholdMs;
+  }
+
+  public int getExcludeFastQueryThresholdMs() {
+    return excludeFastQueryThresholdMs;
+  }
+
+  public boolean isWrapperProxyEnabled() {
+    return wrapperProxyEnabled;
+  }
+
+  public boolean isLazyStatementTag() {
+    return lazyStatementTag;
+  }
+
+  public int getMaxSpansPerSecond() {
+    return maxSpansPerSecond;
+  }
+
+  public boolean isRateLimitPerPeer() {
+    return rateLimitPerPeer;
+  }
+
+  /**
+   * @return The span rate limiter, or {@code null} when spans are not limited.
+   */
+  SpanRateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  public boolean isNormalizeStatements() {
+    return normalizeStatements;
+  }
+
+  public boolean isAggregateStatements() {
+    return aggregateStatements;
+  }
+
+  public boolean isTraceResultSets() {
+    return traceResultSets;
+  }
+
+  public boolean isSqlOperationNames() {
+    return sqlOperationNames;
+  }
+
+  public int getMaxOperationNames() {
+    return maxOperationNames;
+  }
+
+  public boolean isMetricsEnabled() {
+    return metricsEnabled;
+  }
+
+  public int getTopStatements() {
+    return topStatements;
+  }
+
+  /**
+   * @return Whether calls are timed for {@link JdbcMetrics}, even when they are not traced.
+   */
+  boolean recordsMetrics() {
+    return metricsEnabled || topStatements > 0;
+  }
+
+  public int getPoolSaturationThresholdMs() {
+    return poolSaturationThresholdMs;
+  }
+
+  public int getLeakDetectionThresholdMs() {
+    return leakDetectionThresholdMs;
+  }
+
+  public double getLeakStackTraceSampleRate() {
+    return leakStackTraceSampleRate;
+  }
+
+  public boolean isTraceTransactions() {
+    return traceTransactions;
+  }
+
+  long getSlowQueryThresholdNanos() {
+    return slowQueryThresholdNanos;
+  }
+
+  long getExcludeFastQueryThresholdNanos() {
+    return excludeFastQueryThresholdNanos;
+  }
+
+  long getPoolSaturationThresholdNanos() {
+    return poolSaturationThresholdNanos;
+  }
+
+  /**
+   * @return A builder initialized with the values of this configuration.
+   */
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  @Override
+  public String toString() {
+    return "JdbcTracingConfig{" +
+        "traceEnabled=" + traceEnabled +
+        ", slowQueryThresholdMs=" + slowQueryThresholdMs +
+        ", excludeFastQueryThresholdMs=" + excludeFastQueryThresholdMs +
+        ", wrapperProxyEnabled=" + wrapperProxyEnabled +
+        ", lazyStatementTag=" + lazyStatementTag +
+        ", maxSpansPerSecond=" + maxSpansPerSecond +
+        ", rateLimitPerPeer=" + rateLimitPerPeer +
+        ", normalizeStatements=" + normalizeStatements +
+        ", aggregateStatements=" + aggregateStatements +
+        ", traceResultSets=" + traceResultSets +
+        ", sqlOperationNames=" + sqlOperationNames +
+        ", maxOperationNames=" + maxOperationNames +
+        ", metricsEnabled=" + metricsEnabled +
+        ", topStatements=" + topStatements +
+        ", poolSaturationThresholdMs=" + poolSaturationThresholdMs +
+        ", leakDetectionThresholdMs=" + leakDetectionThresholdMs +
+        ", leakStackTraceSampleRate=" + leakStackTraceSampleRate +
+        ", traceTransactions=" + traceTransactions +
+        '}';
+  }
+
+  public static class Builder {
+    private boolean traceEnabled = true;
+    private int slowQueryThresholdMs;
+    private int excludeFastQueryThresholdMs;
+    private boolean wrapperProxyEnabled = true;
+    private boolean lazyStatementTag;
+    private int maxSpansPerSecond;
+    private boolean rateLimitPerPeer;
+    private SpanRateLimiter rateLimiter;
+    private boolean normalizeStatements;
+    private boolean aggregateStatements;
+    private boolean traceResultSets;
+    private boolean sqlOperationNames;
+    private int maxOperationNames = DEFAULT_MAX_OPERATION_NAMES;
+    private boolean metricsEnabled;
+    private int topStatements;
+    private int poolSaturationThresholdMs;
+    private int leakDetectionThresholdMs;
+    private double leakStackTraceSampleRate = DEFAULT_LEAK_STACK_TRACE_SAMPLE_RATE;
+    private boolean traceTransactions;
+
+    public Builder() {
+    }
+
+    public Builder(JdbcTracingConfig config) {
+      this.traceEnabled = config.traceEnabled;
+      this.slowQueryThresholdMs = config.slowQueryThresholdMs;
+      this.excludeFastQueryThresholdMs = config.excludeFastQueryThresholdMs;
+      this.wrapperProxyEnabled = config.wrapperProxyEnabled;
+      this.lazyStatementTag = config.lazyStatementTag;
+      this.maxSpansPerSecond = config.maxSpansPerSecond;
+      this.rateLimitPerPeer = config.rateLimitPerPeer;
+      this.rateLimiter = config.rateLimiter;
+      this.normalizeStatements = config.normalizeStatements;
+      this.aggregateStatements = config.aggregateStatements;
+      this.traceResultSets = config.traceResultSets;
+      this.sqlOperationNames = config.sqlOperationNames;
+      this.maxOperationNames = config.maxOperationNames;
+      this.metricsEnabled = config.metricsEnabled;
+      this.topStatements = config.topStatements;
+      this.poolSaturationThresholdMs = config.poolSaturationThresholdMs;
+      this.leakDetectionThresholdMs = config.leakDetectionThresholdMs;
+      this.leakStackTraceSampleRate = config.leakStackTraceSampleRate;
+      this.traceTransactions = config.traceTransactions;
+    }
+
+    public Builder traceEnabled(boolean traceEnabled) {
+      this.traceEnabled = traceEnabled;
+      return this;
+    }
+
+    /**
+     * @param slowQueryThresholdMs Spans longer than this are tagged {@code slow=true}, {@code 0}
+     *                             disables the check.
+     */
+    public Builder slowQueryThresholdMs(int slowQueryThresholdMs) {
+      this.slowQueryThresholdMs = slowQueryThresholdMs;
+      return this;
+    }
+
+    /**
+     * @param excludeFastQueryThresholdMs Spans shorter than this are tagged {@code
+     *                                    sampling.priority=0}, {@code 0} disables the check.
+     */
+    public Builder excludeFastQueryThresholdMs(int excludeFastQueryThresholdMs) {
+      this.excludeFastQueryThresholdMs = excludeFastQueryThresholdMs;
+      return this;
+    }
+
+    /**
+     * @param wrapperProxyEnabled Whether connections and statements are wrapped in a dynamic proxy
+     *                            that also implements the vendor interfaces of the driver objects.
+     *                            When {@code false} the tracing objects are returned directly,
+     *                            which avoids reflective dispatch on every JDBC call but hides
+     *                            vendor interfaces from casts (they stay reachable through {@code
+     *                            unwrap}).
+     */
+    public Builder wrapperProxyEnabled(boolean wrapperProxyEnabled) {
+      this.wrapperProxyEnabled = wrapperProxyEnabled;
+      return this;
+    }
+
+    /**
+     * @param lazyStatementTag When {@code true} the {@code db.statement} tag is attached when the
+     *                         span finishes, and only if the span is kept: it failed, it is slow,
+     *                         or it was not excluded as a fast query.
+     */
+    public Builder lazyStatementTag(boolean lazyStatementTag) {
+      this.lazyStatementTag = lazyStatementTag;
+      return this;
+    }
+
+    /**
+     * @param maxSpansPerSecond Upper bound of spans created per second, {@code 0} disables the
+     *                          limit. Statements over the limit run untraced and are counted by
+     *                          {@link JdbcTracing#getRateLimitedSpans()}.
+     */
+    public Builder maxSpansPerSecond(int maxSpansPerSecond) {
+      this.maxSpansPerSecond = maxSpansPerSecond;
+      return this;
+    }
+
+    /**
+     * @param rateLimitPerPeer Whether {@code maxSpansPerSecond} applies to each peer service
+     *                         separately instead of to the whole JVM.
+     */
+    public Builder rateLimitPerPeer(boolean rateLimitPerPeer) {
+      this.rateLimitPerPeer = rateLimitPerPeer;
+      return this;
+    }
+
+    /**
+     * Keep the buckets of the configuration this builder was derived from when the limits did not
+     * change.
+     */
+    private SpanRateLimiter rateLimiter(int maxSpansPerSecond, boolean perPeer) {
+      if (maxSpansPerSecond <= 0) {
+        return null;
+      }
+      if (rateLimiter != null && rateLimiter.hasSameLimits(maxSpansPerSecond, perPeer)) {
+        return rateLimiter;
+      }
+      return new SpanRateLimiter(maxSpansPerSecond, perPeer);
+    }
+
+    /**
+     * @param normalizeStatements When {@code true} literals in {@code db.statement} are replaced
+     *                            by {@code ?} and the statement fingerprint is added as {@code
+     *                            db.statement.fingerprint}.
+     */
+    public Builder normalizeStatements(boolean normalizeStatements) {
+      this.normalizeStatements = normalizeStatements;
+      return this;
+    }
+
+    /**
+     * @param aggregateStatements When {@code true} and the tracer uses a {@link
+     *                            StatementSummaryScopeManager}, statements executed while a span
+     *                            is active are summarized on that span instead of being reported
+     *                            as child spans. With any other scope manager, E.g. the default
+     *                            one of a tracer, statements are still reported as spans and a
+     *                            warning is logged once.
+     */
+    public Builder aggregateStatements(boolean aggregateStatements) {
+      this.aggregateStatements = aggregateStatements;
+      return this;
+    }
+
+    /**
+     * @param traceResultSets When {@code true}, result sets returned by traced statements report a
+     *                        "Fetch" span with the number of rows read, the time to the first
+     *                        row and the time until the result set is closed.
+     */
+    public Builder traceResultSets(boolean traceResultSets) {
+      this.traceResultSets = traceResultSets;
+      return this;
+    }
+
+    /**
+     * @param sqlOperationNames When {@code true}, spans are named after the command and table of
+     *                          their statement, E.g. {@code SELECT orders}, instead of {@code
+     *                          Query}, {@code Update} or {@code Execute}.
+     */
+    public Builder sqlOperationNames(boolean sqlOperationNames) {
+      this.sqlOperationNames = sqlOperationNames;
+      return this;
+    }
+
+    /**
+     * @param maxOperationNames The number of distinct operation names derived from statements,
+     *                          statements beyond it keep the default operation name.
+     */
+    public Builder maxOperationNames(int maxOperationNames) {
+      this.maxOperationNames = maxOperationNames;
+      return this;
+    }
+
+    /**
+     * @param metricsEnabled When {@code true}, the latency of every JDBC call is recorded in {@link
+     *                       JdbcMetrics}, including calls that are not traced.
+     */
+    public Builder metricsEnabled(boolean metricsEnabled) {
+      this.metricsEnabled = metricsEnabled;
+      return this;
+    }
+
+    /**
+     * @param topStatements The number of statements tracked by {@link
+     *                      JdbcMetrics#getTopStatements()}, those consuming the most database
+     *                      time. {@code 0} disables the tracking.
+     */
+    public Builder topStatements(int topStatements) {
+      this.topStatements = topStatements;
+      return this;
+    }
+
+    /**
+     * @param poolSaturationThresholdMs Connection acquisitions of a {@link TracingDataSource}
+     *                                  waiting longer than this are counted as saturated and
+     *                                  tagged {@code db.pool.saturated=true}, {@code 0} disables
+     *                                  the check.
+     */
+    public Builder poolSaturationThresholdMs(int poolSaturationThresholdMs) {
+      this.poolSaturationThresholdMs = poolSaturationThresholdMs;
+      return this;
+    }
+
+    /**
+     * @param leakDetectionThresholdMs Connections opened while this is positive are tracked until
+     *                                 closed. Those held longer than this, or garbage collected
+     *                                 without being closed, are logged as leaks. {@code 0}
+     *                                 disables the tracking.
+     */
+    public Builder leakDetectionThresholdMs(int leakDetectionThresholdMs) {
+      this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+      return this;
+    }
+
+    /**
+     * @param leakStackTraceSampleRate The fraction, between {@code 0} and {@code 1}, of tracked
+     *                                 connections whose opening stack trace is captured and
+     *                                 logged with their leak. Values out of range are clamped.
+     */
+    public Builder leakStackTraceSampleRate(double leakStackTraceSampleRate) {
+      this.leakStackTraceSampleRate = Double.isNaN(leakStackTraceSampleRate)
+          ? DEFAULT_LEAK_STACK_TRACE_SAMPLE_RATE
+          : Math.max(0, Math.min(1, leakStackTraceSampleRate));
+      return this;
+    }
+
+    /**
+     * @param traceTransactions When {@code true}, connections whose auto-commit is turned off
+     *                          report a "Transaction" span from their first statement to the
+     *                          commit or rollback, parent of the spans in between.
+     */
+    public Builder traceTransactions(boolean traceTransactions) {
+      this.traceTransactions = traceTransactions;
+      return this;
+    }
+
+    public JdbcTracingConfig build() {
+      return new JdbcTracingConfig(this);
+    }
+  }
+}
@@ -16,6 +16,8 @@ package io.opentracing.contrib.jdbc;
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
+import io.opentracing.contrib.common.Classes;
+import io.opentracing.contrib.common.WrapperProxy;
 import io.opentracing.noop.NoopSpan;
 import io.opentracing.tag.BooleanTag;
 import io.opentracing.tag.IntTag;
@@ -24,7 +26,6 @@ import io.opentracing.tag.Tags;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 class JdbcTracingUtils {
 
@@ -37,6 +38,41 @@ class JdbcTracingUtils {
 
   static final BooleanTag SLOW = new BooleanTag("slow");
   static final IntTag SAMPLING_PRIORITY = new IntTag("sampling.priority");
+  static final LongTag DURATION_NANOS = new LongTag("db.duration_ns");
+  static final IntTag BATCH_SIZE = new IntTag("db.batch.size");
+  static final LongTag BATCH_ROW_AVG_NANOS = new LongTag("db.batch.row_avg_ns");
+  static final IntTag POOL_WAITERS = new IntTag("db.pool.waiters");
+  static final BooleanTag POOL_SATURATED = new BooleanTag("db.pool.saturated");
+  static final IntTag TRANSACTION_STATEMENTS = new IntTag("db.transaction.statements");
+  static final LongTag TRANSACTION_LOCK_NANOS = new LongTag("db.transaction.lock_ns");
+  static final StringTag STATEMENT_FINGERPRINT = new StringTag("db.statement.fingerprint");
+
+  /**
+   * All interfaces of a driver class, computed once per class.
+   */
+  private static final ClassValue<Class<?>[]> DELEGATE_INTERFACES = new ClassValue<Class<?>[]>() {
+    @Override
+    protected Class<?>[] computeValue(Class<?> type) {
+      return Classes.getAllInterfaces(type);
+    }
+  };
+
+  /**
+   * Wrap the tracing object in a {@link WrapperProxy} that also exposes the vendor interfaces of
+   * the delegate. The proxy is skipped when it is disabled by configuration or when the tracing
+   * object already implements every interface of the delegate.
+   */
+  static <T> T wrap(T delegate, T tracing) {
+    if (delegate == null || !JdbcTracing.getConfig().isWrapperProxyEnabled()) {
+      return tracing;
+    }
+    for (Class<?> iface : DELEGATE_INTERFACES.get(delegate.getClass())) {
+      if (!iface.isInstance(tracing)) {
+        return WrapperProxy.wrap(delegate, tracing);
+      }
+    }
+    return tracing;
+  }
 
   static Span buildSpan(String operationName,
       String sql,
@@ -44,21 +80,62 @@ class JdbcTracingUtils {
       boolean withActiveSpanOnly,
       Set<String> ignoreStatements,
       Tracer tracer) {
-    if (!JdbcTracing.isTraceEnabled() || (withActiveSpanOnly && tracer.activeSpan() == null)) {
+    return buildSpan(operationName, StatementTemplate.of(sql, ignoreStatements), connectionInfo,
+        withActiveSpanOnly, tracer, JdbcTracing.getConfig(), System.nanoTime());
+  }
+
+  /**
+   * Build a span without statement.
+   *
+   * @param startNanos The {@link System#nanoTime()} reading at the start of the call.
+   */
+  static Span buildSpan(String operationName,
+      ConnectionInfo connectionInfo,
+      boolean withActiveSpanOnly,
+      Tracer tracer,
+      long startNanos) {
+    return buildSpan(operationName, StatementTemplate.NONE, connectionInfo, withActiveSpanOnly,
+        tracer, JdbcTracing.getConfig(), startNanos);
+  }
+
+  private static Span buildSpan(String operationName,
+      StatementTemplate statement,
+      ConnectionInfo connectionInfo,
+      boolean withActiveSpanOnly,
+      Tracer tracer,
+      JdbcTracingConfig config,
+      long startNanos) {
+    if (!config.isTraceEnabled() || (withActiveSpanOnly && tracer.activeSpan() == null)) {
       return NoopSpan.INSTANCE;
-    } else if (ignoreStatements != null && ignoreStatements.contains(sql)) {
+    } else if (statement.isIgnored()) {
       return NoopSpan.INSTANCE;
     }
 
-    Tracer.SpanBuilder spanBuilder = tracer.buildSpan(operationName)
-        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
+    if (!tryAcquireSpan(config, connectionInfo, startNanos)) {
+      return NoopSpan.INSTANCE;
+    }
 
-    Span span = spanBuilder.start();
-    decorate(span, sql, connectionInfo);
+    if (config.isSqlOperationNames()) {
+      operationName = statement.getOperationName(operationName, config.getMaxOperationNames());
+    }
+    // timestamped by the tracer, with the clock of the parent span
+    Span span = tracer.buildSpan(operationName)
+        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+        .start();
+    decorate(span, config.isLazyStatementTag() ? null : statement, connectionInfo, config);
 
     return span;
   }
 
+  /**
+   * @return Whether the span rate limit, if any, allows a span for the database now.
+   */
+  static boolean tryAcquireSpan(JdbcTracingConfig config, ConnectionInfo connectionInfo,
+      long nanoTime) {
+    final SpanRateLimiter rateLimiter = config.getRateLimiter();
+    return rateLimiter == null || rateLimiter.tryAcquire(connectionInfo, nanoTime);
+  }
+
   static <E extends Exception> void execute(String operationName,
       CheckedRunnable<E> runnable,
       String sql,
@@ -66,23 +143,59 @@ class JdbcTracingUtils {
       boolean withActiveSpanOnly,
       Set<String> ignoreStatements,
       Tracer tracer) throws E {
-    if (!JdbcTracing.isTraceEnabled() || (withActiveSpanOnly && tracer.activeSpan() == null)) {
-      runnable.run();
+    final JdbcTracingConfig config = JdbcTracing.getConfig();
+    if (!config.isTraceEnabled() || (withActiveSpanOnly && tracer.activeSpan() == null)) {
+      if (!config.recordsMetrics()) {
+        runnable.run();
+        return;
+      }
+      final StatementTemplate statement = StatementTemplate.of(sql, ignoreStatements);
+      if (statement.isIgnored()) {
+        runnable.run();
+        return;
+      }
+      final long startNanos = System.nanoTime();
+      try {
+        runnable.run();
+      } finally {
+        recordMetrics(config, connectionInfo, operationName, statement,
+            System.nanoTime() - startNanos);
+      }
+      return;
+    }
+
+    final StatementTemplate statement = StatementTemplate.of(sql, ignoreStatements);
+
+    final StatementSummary summary = activeSummary(statement, tracer, config);
+    if (summary != null) {
+      final long startNanos = System.nanoTime();
+      boolean error = false;
+      try {
+        runnable.run();
+      } catch (Exception e) {
+        error = true;
+        throw e;
+      } finally {
+        final long durationNanos = System.nanoTime() - startNanos;
+        summary.record(statement.getNormalized(), durationNanos, error);
+        recordMetrics(config, connectionInfo, operationName, statement, durationNanos);
+      }
       return;
     }
 
-    final Span span = buildSpan(operationName, sql, connectionInfo, withActiveSpanOnly,
-        ignoreStatements, tracer);
-    long startTime = (JdbcTracing.getSlowQueryThresholdMs() > 0
-        || JdbcTracing.getExcludeFastQueryThresholdMs() > 0) ? System.nanoTime() : 0;
+    final long startNanos = System.nanoTime();
+    final Span span = buildSpan(operationName, statement, connectionInfo, withActiveSpanOnly,
+        tracer, config, startNanos);
+    boolean error = false;
     try (Scope ignored = tracer.activateSpan(span)) {
       runnable.run();
     } catch (Exception e) {
+      error = true;
       JdbcTracingUtils.onError(e, span);
       throw e;
     } finally {
-      JdbcTracingUtils.queryThresholdChecks(span, startTime);
-      span.finish();
+      JdbcTracingUtils.finish(span, startNanos, config, operationName, statement, connectionInfo, error,
+          null);
     }
   }
 
@@ -93,51 +206,94 @@ class JdbcTracingUtils {
       boolean withActiveSpanOnly,
       Set<String> ignoreStatements,
       Tracer tracer) throws E {
-    if (!JdbcTracing.isTraceEnabled() || (withActiveSpanOnly && tracer.activeSpan() == null)) {
-      return callable.call();
+    return call(operationName, callable, StatementTemplate.of(sql, ignoreStatements),
+        connectionInfo, withActiveSpanOnly, tracer, null);
+  }
+
+  static <T, E extends Exception> T call(String operationName,
+      CheckedCallable<T, E> callable,
+      StatementTemplate statement,
+      ConnectionInfo connectionInfo,
+      boolean withActiveSpanOnly,
+      Tracer tracer,
+      SpanFinishListener listener) throws E {
+    final JdbcTracingConfig config = JdbcTracing.getConfig();
+    if (!config.isTraceEnabled() || (withActiveSpanOnly && tracer.activeSpan() == null)) {
+      if (!config.recordsMetrics() || statement.isIgnored()) {
+        return callable.call();
+      }
+      final long startNanos = System.nanoTime();
+      try {
+        return callable.call();
+      } finally {
+        recordMetrics(config, connectionInfo, operationName, statement,
+            System.nanoTime() - startNanos);
+      }
+    }
+
+    final StatementSummary summary = activeSummary(statement, tracer, config);
+    if (summary != null) {
+      final long startNanos = System.nanoTime();
+      boolean error = false;
+      try {
+        return callable.call();
+      } catch (Exception e) {
+        error = true;
+        throw e;
+      } finally {
+        final long durationNanos = System.nanoTime() - startNanos;
+        summary.record(statement.getNormalized(), durationNanos, error);
+        recordMetrics(config, connectionInfo, operationName, statement, durationNanos);
+      }
     }
 
-    final Span span = buildSpan(operationName, sql, connectionInfo, withActiveSpanOnly,
-        ignoreStatements, tracer);
-    long startTime = JdbcTracing.getSlowQueryThresholdMs() > 0 ? System.nanoTime() : 0;
+    final long startNanos = System.nanoTime();
+    final Span span = buildSpan(operationName, statement, connectionInfo, withActiveSpanOnly,
+        tracer, config, startNanos);
+    boolean error = false;
     try (Scope ignored = tracer.activateSpan(span)) {
       return callable.call();
     } catch (Exception e) {
+      error = true;
       JdbcTracingUtils.onError(e, span);
       throw e;
     } finally {
-      JdbcTracingUtils.queryThresholdChecks(span, startTime);
-      span.finish();
+      JdbcTracingUtils.finish(span, startNanos, config, operationName, statement, connectionInfo, error,
+          listener);
     }
   }
 
-  private static boolean isNotEmpty(CharSequence s) {
-    return s != null && !"".contentEquals(s);
+  /**
+   * @return The summary collecting this statement instead of a child span, if any.
+   */
+  private static StatementSummary activeSummary(StatementTemplate statement, Tracer tracer,
+      JdbcTracingConfig config) {
+    if (!config.isAggregateStatements() || !statement.hasSql() || statement.isIgnored()) {
+      return null;
+    }
+    return StatementSummaryScopeManager.activeSummary(tracer);
   }
 
   /**
    * Add tags to span. Skip empty tags to avoid reported NPE in tracers.
    */
-  private static void decorate(Span span, String sql, ConnectionInfo connectionInfo) {
-    Tags.COMPONENT.set(span, COMPONENT_NAME);
+  private static void decorate(Span span, StatementTemplate statement,
+      ConnectionInfo connectionInfo, JdbcTracingConfig config) {
+    connectionInfo.decorate(span);
 
-    if (isNotEmpty(sql)) {
-      Tags.DB_STATEMENT.set(span, sql);
-    }
-    if (isNotEmpty(connectionInfo.getDbType())) {
-      Tags.DB_TYPE.set(span, connectionInfo.getDbType());
+    if (statement != null && statement.hasSql()) {
+      setStatement(span, statement, config);
     }
-    if (isNotEmpty(connectionInfo.getDbPeer())) {
-      PEER_ADDRESS.set(span, connectionInfo.getDbPeer());
-    }
-    if (isNotEmpty(connectionInfo.getDbInstance())) {
-      Tags.DB_INSTANCE.set(span, connectionInfo.getDbInstance());
-    }
-    if (isNotEmpty(connectionInfo.getDbUser())) {
-      Tags.DB_USER.set(span, connectionInfo.getDbUser());
-    }
-    if (isNotEmpty(connectionInfo.getPeerService())) {
-      Tags.PEER_SERVICE.set(span, connectionInfo.getPeerService());
+  }
+
+  private static void setStatement(Span span, StatementTemplate statement,
+      JdbcTracingConfig config) {
+    if (config.isNormalizeStatements()) {
+      final NormalizedSql normalized = statement.getNormalized();
+      Tags.DB_STATEMENT.set(span, normalized.getSql());
+      STATEMENT_FINGERPRINT.set(span, normalized.getFingerprint());
+    } else {
+      Tags.DB_STATEMENT.set(span, statement.getSql());
     }
   }
 
@@ -156,16 +312,65 @@ class JdbcTracingUtils {
     return errorLogs;
   }
 
-  private static void queryThresholdChecks(Span span, long startTime) {
-    long completionTime = System.nanoTime() - startTime;
-    if (JdbcTracing.getExcludeFastQueryThresholdMs() > 0 && completionTime < TimeUnit.MILLISECONDS
-        .toNanos(JdbcTracing.getExcludeFastQueryThresholdMs())) {
+  /**
+   * Record the call in the latency histograms and the top statements, unless its statement is
+   * ignored, so that E.g. health checks do not dominate them.
+   */
+  private static void recordMetrics(JdbcTracingConfig config, ConnectionInfo connectionInfo,
+      String operationName, StatementTemplate statement, long durationNanos) {
+    if (statement.isIgnored()) {
+      return;
+    }
+    if (config.isMetricsEnabled()) {
+      JdbcMetrics.record(connectionInfo, operationName, durationNanos);
+    }
+    if (config.getTopStatements() > 0 && statement.hasSql()) {
+      JdbcMetrics.recordStatement(statement.getNormalized(), durationNanos,
+          config.getTopStatements());
+    }
+  }
+
+  /**
+   * Measure the call and finish the span, tagged with the measured duration.
+   */
+  private static void finish(Span span, long startNanos, JdbcTracingConfig config,
+      String operationName, StatementTemplate statement, ConnectionInfo connectionInfo,
+      boolean error, SpanFinishListener listener) {
+    final long durationNanos = System.nanoTime() - startNanos;
+    recordMetrics(config, connectionInfo, operationName, statement, durationNanos);
+    if (span instanceof NoopSpan) {
+      return;
+    }
+    DURATION_NANOS.set(span, durationNanos);
+
+    final boolean fast = config.getExcludeFastQueryThresholdMs() > 0
+        && durationNanos < config.getExcludeFastQueryThresholdNanos();
+    final boolean slow = config.getSlowQueryThresholdMs() > 0
+        && durationNanos > config.getSlowQueryThresholdNanos();
+    if (fast) {
       SAMPLING_PRIORITY.set(span, 0);
     }
-    if (JdbcTracing.getSlowQueryThresholdMs() > 0 && completionTime > TimeUnit.MILLISECONDS
-        .toNanos(JdbcTracing.getSlowQueryThresholdMs())) {
+    if (slow) {
       SLOW.set(span, true);
     }
+    if (config.isLazyStatementTag() && (error || slow || !fast) && statement.hasSql()) {
+      setStatement(span, statement, config);
+    }
+    if (listener != null) {
+      listener.beforeFinish(span, durationNanos);
+    }
+    span.finish();
+  }
+
+  /**
+   * Notified before a statement span is finished, so the caller can add tags or keep its context.
+   * Not called when no span was recorded.
+   */
+  @FunctionalInterface
+  interface SpanFinishListener {
+
+    void beforeFinish(Span span, long durationNanos);
+
   }
 
   @FunctionalInterface
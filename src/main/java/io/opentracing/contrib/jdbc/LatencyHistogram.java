@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: each power of two of microseconds is
+ * split in {@link #SUB_BUCKETS} linear buckets, bounding the relative error of percentiles to
+ * about 6%. Counts are striped over a few arrays picked by thread, so that concurrent recordings
+ * rarely hit the same cache line. A stripe is allocated by its first recording, afterwards
+ * recording does not allocate.
+ */
+final class LatencyHistogram implements LatencyHistogramMXBean {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * Values up to 2^40 microseconds, about 12 days, larger values are counted in the last bucket.
+   */
+  private static final int MAX_EXPONENT = 40;
+  static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private static final int STRIPES = 4;
+
+  private final AtomicReferenceArray<AtomicLongArray> stripes =
+      new AtomicReferenceArray<>(STRIPES);
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  void record(long durationNanos) {
+    final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, durationNanos));
+    final int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    AtomicLongArray stripe = stripes.get(index);
+    if (stripe == null) {
+      stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+      stripe = stripes.get(index);
+    }
+    stripe.incrementAndGet(bucket(micros));
+    max.accumulate(micros);
+  }
+
+  static int bucket(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return The highest value counted in the bucket.
+   */
+  static long bucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long subBucket = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  private long[] counts() {
+    final long[] counts = new long[BUCKETS];
+    for (int s = 0; s < STRIPES; s++) {
+      final AtomicLongArray stripe = stripes.get(s);
+      if (stripe == null) {
+        continue;
+      }
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += stripe.get(i);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * @return The value below which the fraction {@code quantile} of the recordings fall, in
+   * microseconds.
+   */
+  long percentile(double quantile) {
+    final long[] counts = counts();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  @Override
+  public long getCount() {
+    long total = 0;
+    for (long count : counts()) {
+      total += count;
+    }
+    return total;
+  }
+
+  @Override
+  public long getP50Micros() {
+    return percentile(0.5);
+  }
+
+  @Override
+  public long getP99Micros() {
+    return percentile(0.99);
+  }
+
+  @Override
+  public long getP999Micros() {
+    return percentile(0.999);
+  }
+
+  @Override
+  public long getMaxMicros() {
+    return max.get();
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import io.opentracing.Span;
+import io.opentracing.tag.AbstractTag;
+
+/**
+ * Numeric tag for values that may exceed the {@link io.opentracing.tag.IntTag} range, such as
+ * durations in nanoseconds.
+ */
+class LongTag extends AbstractTag<Long> {
+
+  LongTag(String key) {
+    super(key);
+  }
+
+  @Override
+  public void set(Span span, Long tagValue) {
+    span.setTag(key, tagValue);
+  }
+
+  void set(Span span, long tagValue) {
+    span.setTag(key, tagValue);
+  }
+}
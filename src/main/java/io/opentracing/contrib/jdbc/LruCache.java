@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache evicting the least recently used entries. The key space is split into segments,
+ * each guarded by its own lock, so that concurrent lookups of different keys rarely contend.
+ */
+final class LruCache<K, V> {
+
+  private static final int SEGMENTS = 16;
+
+  private final Segment<K, V>[] segments;
+
+  LruCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    final int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+    this.segments = newSegments(SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment<>(segmentSize);
+    }
+  }
+
+  V get(K key) {
+    final Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.get(key);
+    }
+  }
+
+  void put(K key, V value) {
+    final Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.put(key, value);
+    }
+  }
+
+  void clear() {
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Segment<K, V>[] newSegments(int length) {
+    return (Segment<K, V>[]) new Segment<?, ?>[length];
+  }
+
+  private Segment<K, V> segmentFor(K key) {
+    final int hash = key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+  }
+
+  private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    private Segment(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > maxSize;
+    }
+  }
+}
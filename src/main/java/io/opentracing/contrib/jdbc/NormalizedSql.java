@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+/**
+ * SQL statement with literals replaced by {@code ?}, and a stable fingerprint of that text.
+ */
+final class NormalizedSql {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final String sql;
+  private final String fingerprint;
+
+  NormalizedSql(String sql) {
+    this.sql = sql;
+    this.fingerprint = fingerprint(sql);
+  }
+
+  String getSql() {
+    return sql;
+  }
+
+  String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * 64-bit FNV-1a hash of the normalized text, as 16 hex digits.
+   */
+  private static String fingerprint(String sql) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < sql.length(); i++) {
+      final char c = sql.charAt(i);
+      hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+      hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+    final String hex = Long.toHexString(hash);
+    return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+  }
+
+  @Override
+  public String toString() {
+    return sql;
+  }
+}
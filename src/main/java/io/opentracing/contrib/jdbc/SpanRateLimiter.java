@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free token bucket bounding the number of spans created per second, either globally or per
+ * {@link ConnectionInfo#getPeerService() peer}. The bucket holds one second worth of spans.
+ */
+final class SpanRateLimiter {
+
+  /**
+   * Spans dropped by any limiter since the JVM started.
+   */
+  private static final LongAdder dropped = new LongAdder();
+
+  private final int maxSpansPerSecond;
+  private final boolean perPeer;
+  private final long intervalNanos;
+  private final long capacityNanos;
+  private final Bucket global;
+  private final ConcurrentMap<String, Bucket> peers;
+
+  SpanRateLimiter(int maxSpansPerSecond, boolean perPeer) {
+    this.maxSpansPerSecond = maxSpansPerSecond;
+    this.perPeer = perPeer;
+    this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / maxSpansPerSecond);
+    this.capacityNanos = intervalNanos * maxSpansPerSecond;
+    this.global = perPeer ? null : new Bucket(System.nanoTime() - capacityNanos);
+    this.peers = perPeer ? new ConcurrentHashMap<>() : null;
+  }
+
+  static long getDroppedSpans() {
+    return dropped.sum();
+  }
+
+  boolean hasSameLimits(int maxSpansPerSecond, boolean perPeer) {
+    return this.maxSpansPerSecond == maxSpansPerSecond && this.perPeer == perPeer;
+  }
+
+  /**
+   * @param connectionInfo The connection the span is created for.
+   * @param nowNanos       The current {@link System#nanoTime()}.
+   * @return {@code true} if a span may be created, otherwise the span is counted as dropped.
+   */
+  boolean tryAcquire(ConnectionInfo connectionInfo, long nowNanos) {
+    if (bucket(connectionInfo, nowNanos).tryAcquire(nowNanos, intervalNanos, capacityNanos)) {
+      return true;
+    }
+    dropped.increment();
+    return false;
+  }
+
+  private Bucket bucket(ConnectionInfo connectionInfo, long nowNanos) {
+    if (!perPeer) {
+      return global;
+    }
+    final String peer = String.valueOf(connectionInfo.getPeerService());
+    Bucket bucket = peers.get(peer);
+    if (bucket == null) {
+      final Bucket created = new Bucket(nowNanos - capacityNanos);
+      bucket = peers.putIfAbsent(peer, created);
+      if (bucket == null) {
+        bucket = created;
+      }
+    }
+    return bucket;
+  }
+
+  /**
+   * Token bucket expressed as the theoretical arrival time of the next span, so that taking a
+   * token is a single compare-and-set.
+   */
+  private static final class Bucket {
+
+    private final AtomicLong theoreticalArrivalNanos;
+
+    private Bucket(long theoreticalArrivalNanos) {
+      this.theoreticalArrivalNanos = new AtomicLong(theoreticalArrivalNanos);
+    }
+
+    private boolean tryAcquire(long nowNanos, long intervalNanos, long capacityNanos) {
+      for (; ; ) {
+        final long theoreticalArrival = theoreticalArrivalNanos.get();
+        final long next = Math.max(theoreticalArrival - nowNanos, 0) + intervalNanos;
+        if (next > capacityNanos) {
+          return false;
+        }
+        if (theoreticalArrivalNanos.compareAndSet(theoreticalArrival, nowNanos + next)) {
+          return true;
+        }
+      }
+    }
+  }
+}
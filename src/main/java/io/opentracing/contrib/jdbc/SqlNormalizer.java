@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+/**
+ * Replaces string and numeric literals by {@code ?}, collapses {@code IN} lists to {@code IN (?)},
+ * strips comments and collapses whitespace, so that statements differing only by their literals
+ * share the same text and fingerprint. Results are kept in a bounded LRU cache keyed by the raw
+ * SQL.
+ */
+final class SqlNormalizer {
+
+  private static final int CACHE_SIZE = 1024;
+
+  /**
+   * Longer statements are normalized on every call rather than pinned in the cache.
+   */
+  private static final int MAX_CACHED_LENGTH = 16 * 1024;
+
+  private static final LruCache<String, NormalizedSql> cache = new LruCache<>(CACHE_SIZE);
+
+  private SqlNormalizer() {
+  }
+
+  static NormalizedSql normalize(String sql) {
+    if (sql.length() > MAX_CACHED_LENGTH) {
+      return new NormalizedSql(normalizeText(sql));
+    }
+    NormalizedSql normalized = cache.get(sql);
+    if (normalized == null) {
+      normalized = new NormalizedSql(normalizeText(sql));
+      cache.put(sql, normalized);
+    }
+    return normalized;
+  }
+
+  static String normalizeText(String sql) {
+    final char[] in = sql.toCharArray();
+    final char[] out = new char[in.length];
+    int length = 0;
+    boolean pendingSpace = false;
+
+    int i = 0;
+    while (i < in.length) {
+      final char c = in[i];
+      if (Character.isWhitespace(c)) {
+        pendingSpace = length > 0;
+        i++;
+        continue;
+      }
+      if (c == '-' && i + 1 < in.length && in[i + 1] == '-') {
+        i = lineCommentEnd(in, i);
+        pendingSpace = length > 0;
+        continue;
+      }
+      if (c == '/' && i + 1 < in.length && in[i + 1] == '*') {
+        i = blockCommentEnd(in, i);
+        pendingSpace = length > 0;
+        continue;
+      }
+
+      if (pendingSpace) {
+        out[length++] = ' ';
+        pendingSpace = false;
+      }
+
+      if (c == '(' && endsWithInKeyword(out, length)) {
+        final int end = inListEnd(in, i);
+        if (end > 0) {
+          out[length++] = '(';
+          out[length++] = '?';
+          out[length++] = ')';
+          i = end;
+          continue;
+        }
+      }
+
+      final boolean afterIdentifier = length > 0 && isIdentifierPart(out[length - 1]);
+      final int literalEnd = afterIdentifier ? -1 : literalEnd(in, i);
+      if (literalEnd > 0) {
+        out[length++] = '?';
+        i = literalEnd;
+        continue;
+      }
+
+      if (c == '"' || c == '`') {
+        // quoted identifiers are kept as they are
+        final int end = quotedEnd(in, i, c);
+        System.arraycopy(in, i, out, length, end - i);
+        length += end - i;
+        i = end;
+        continue;
+      }
+
+      out[length++] = c;
+      i++;
+    }
+    return new String(out, 0, length);
+  }
+
+  /**
+   * @return The index after the literal or placeholder starting at {@code start}, or {@code -1}.
+   */
+  private static int literalEnd(char[] in, int start) {
+    final char c = in[start];
+    if (c == '\'') {
+      return quotedEnd(in, start, '\'');
+    }
+    if (c == '?') {
+      return start + 1;
+    }
+    if ((c == 'N' || c == 'n' || c == 'X' || c == 'x' || c == 'E' || c == 'e' || c == 'B'
+        || c == 'b') && start + 1 < in.length && in[start + 1] == '\'') {
+      return quotedEnd(in, start + 1, '\'');
+    }
+    if (isDigit(c)) {
+      return numberEnd(in, start);
+    }
+    return -1;
+  }
+
+  /**
+   * @return The index after the closing quote, doubled quotes are part of the value.
+   */
+  private static int quotedEnd(char[] in, int start, char quote) {
+    int i = start + 1;
+    while (i < in.length) {
+      if (in[i] == quote) {
+        if (i + 1 < in.length && in[i + 1] == quote) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return in.length;
+  }
+
+  private static int numberEnd(char[] in, int start) {
+    int i = start;
+    if (in[i] == '0' && i + 1 < in.length && (in[i + 1] == 'x' || in[i + 1] == 'X')) {
+      i += 2;
+      while (i < in.length && Character.digit(in[i], 16) >= 0) {
+        i++;
+      }
+      return i;
+    }
+    while (i < in.length && isDigit(in[i])) {
+      i++;
+    }
+    if (i < in.length && in[i] == '.') {
+      i++;
+      while (i < in.length && isDigit(in[i])) {
+        i++;
+      }
+    }
+    if (i + 1 < in.length && (in[i] == 'e' || in[i] == 'E')
+        && (isDigit(in[i + 1]) || in[i + 1] == '+' || in[i + 1] == '-')) {
+      i += 2;
+      while (i < in.length && isDigit(in[i])) {
+        i++;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * @return The index after the closing parenthesis when the list starting at {@code start}
+   * contains only literals and placeholders, otherwise {@code -1}.
+   */
+  private static int inListEnd(char[] in, int start) {
+    int i = start + 1;
+    boolean expectValue = true;
+    while (i < in.length) {
+      final char c = in[i];
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (expectValue) {
+        final int end = literalEnd(in, i);
+        if (end < 0) {
+          return -1;
+        }
+        i = end;
+        expectValue = false;
+      } else if (c == ',') {
+        expectValue = true;
+        i++;
+      } else if (c == ')') {
+        return i + 1;
+      } else {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean endsWithInKeyword(char[] out, int length) {
+    int end = length;
+    if (end > 0 && out[end - 1] == ' ') {
+      end--;
+    }
+    return end >= 2
+        && (out[end - 1] == 'n' || out[end - 1] == 'N')
+        && (out[end - 2] == 'i' || out[end - 2] == 'I')
+        && (end == 2 || !isIdentifierPart(out[end - 3]));
+  }
+
+  private static int lineCommentEnd(char[] in, int start) {
+    int i = start + 2;
+    while (i < in.length && in[i] != '\n' && in[i] != '\r') {
+      i++;
+    }
+    return i;
+  }
+
+  private static int blockCommentEnd(char[] in, int start) {
+    int i = start + 2;
+    while (i + 1 < in.length) {
+      if (in[i] == '*' && in[i + 1] == '/') {
+        return i + 2;
+      }
+      i++;
+    }
+    return in.length;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.' || c == '@'
+        || c == '#' || c == ':';
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Derives low cardinality operation names such as {@code SELECT orders} or {@code INSERT
+ * order_items} from the head of a statement: its command and, for DML, the first table. Parse
+ * results are kept in a bounded LRU cache keyed by the raw SQL. At most a configured number of
+ * distinct names are handed out, further statements keep the default operation name so that the
+ * set of span names stays bounded. Statements starting with an unknown word, E.g. a typo or a vendor
+ * extension, are not named, so that they do not use up the names.
+ */
+final class SqlOperationNames {
+
+  private static final int CACHE_SIZE = 1024;
+
+  /**
+   * Cached for statements without a derived name, as the cache cannot hold {@code null}.
+   */
+  private static final String NO_NAME = "";
+
+  /**
+   * Commands named by their keyword only.
+   */
+  private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList(
+      "ALTER", "ANALYZE", "BEGIN", "CALL", "COMMENT", "COMMIT", "COPY", "CREATE", "DECLARE",
+      "DROP", "EXEC", "EXECUTE", "EXPLAIN", "GRANT", "LOCK", "RELEASE", "RENAME", "REVOKE",
+      "ROLLBACK", "SAVEPOINT", "SET", "SHOW", "START", "TRUNCATE", "UPSERT", "VACUUM", "VALUES",
+      "WITH"));
+
+  private static final LruCache<String, String> cache = new LruCache<>(CACHE_SIZE);
+
+  private static final Set<String> names = ConcurrentHashMap.newKeySet();
+  private static final AtomicInteger size = new AtomicInteger();
+
+  private SqlOperationNames() {
+  }
+
+  /**
+   * @return The operation name derived from the statement, or {@code null} if none can be derived
+   * or {@code maxNames} other names are already in use.
+   */
+  static String operationName(String sql, int maxNames) {
+    String name = cache.get(sql);
+    if (name == null) {
+      name = parse(sql);
+      cache.put(sql, name == null ? NO_NAME : name);
+    }
+    if (name == null || name.isEmpty()) {
+      return null;
+    }
+    return admit(name, maxNames) ? name : null;
+  }
+
+  private static boolean admit(String name, int maxNames) {
+    if (names.contains(name)) {
+      return true;
+    }
+    if (size.get() >= maxNames) {
+      return false;
+    }
+    if (names.add(name) && size.incrementAndGet() > maxNames) {
+      names.remove(name);
+      size.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  static String parse(String sql) {
+    int i = skipSpaceAndComments(sql, 0);
+    final int commandEnd = wordEnd(sql, i);
+    if (commandEnd == i) {
+      return null;
+    }
+    final String command = sql.substring(i, commandEnd).toUpperCase(Locale.ROOT);
+    i = commandEnd;
+    switch (command) {
+      case "SELECT":
+        i = topLevelKeywordEnd(sql, i, "FROM");
+        break;
+      case "INSERT":
+      case "MERGE":
+      case "REPLACE":
+        i = keywordEnd(sql, i, "INTO");
+        break;
+      case "DELETE":
+        i = keywordEnd(sql, i, "FROM");
+        break;
+      case "UPDATE":
+        break;
+      default:
+        return COMMANDS.contains(command) ? command : null;
+    }
+    final String table = i < 0 ? null : identifier(sql, skipSpaceAndComments(sql, i));
+    return table == null ? command : command + ' ' + table;
+  }
+
+  /**
+   * @return The end of the keyword if it is the next word, otherwise {@code start}.
+   */
+  private static int keywordEnd(String sql, int start, String keyword) {
+    final int i = skipSpaceAndComments(sql, start);
+    final int end = wordEnd(sql, i);
+    if (end - i == keyword.length() && sql.regionMatches(true, i, keyword, 0, end - i)) {
+      return end;
+    }
+    return start;
+  }
+
+  /**
+   * @return The end of the first occurrence of the keyword outside of parentheses and literals, or
+   * {@code -1} if there is none.
+   */
+  private static int topLevelKeywordEnd(String sql, int start, String keyword) {
+    int depth = 0;
+    int i = start;
+    while (i < sql.length()) {
+      final char c = sql.charAt(i);
+      if (c == '(') {
+        depth++;
+        i++;
+      } else if (c == ')') {
+        depth--;
+        i++;
+      } else if (c == '\'' || c == '"' || c == '`') {
+        i = quotedEnd(sql, i, c);
+      } else if (Character.isLetter(c) || c == '_') {
+        final int end = wordEnd(sql, i);
+        if (depth == 0 && end - i == keyword.length()
+            && sql.regionMatches(true, i, keyword, 0, end - i)) {
+          return end;
+        }
+        i = end;
+      } else {
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The possibly qualified and quoted identifier at {@code start}, unquoted, lower case
+   * unless it was quoted, or {@code null} if there is none.
+   */
+  private static String identifier(String sql, int start) {
+    final StringBuilder name = new StringBuilder();
+    int i = start;
+    while (i < sql.length()) {
+      final char c = sql.charAt(i);
+      final int end;
+      if (c == '"' || c == '`' || c == '[') {
+        end = quotedEnd(sql, i, c == '[' ? ']' : c);
+        name.append(sql, i + 1, Math.max(i + 1, end - 1));
+      } else {
+        end = wordEnd(sql, i);
+        if (end == i) {
+          break;
+        }
+        name.append(sql.substring(i, end).toLowerCase(Locale.ROOT));
+      }
+      i = end;
+      if (i < sql.length() && sql.charAt(i) == '.') {
+        name.append('.');
+        i++;
+      } else {
+        break;
+      }
+    }
+    return name.length() == 0 ? null : name.toString();
+  }
+
+  private static int wordEnd(String sql, int start) {
+    int i = start;
+    while (i < sql.length()
+        && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_'
+        || sql.charAt(i) == '$')) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int quotedEnd(String sql, int start, char quote) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i++) == quote) {
+        if (i < sql.length() && sql.charAt(i) == quote) {
+          i++;
+        } else {
+          return i;
+        }
+      }
+    }
+    return i;
+  }
+
+  private static int skipSpaceAndComments(String sql, int start) {
+    int i = start;
+    while (i < sql.length()) {
+      final char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (sql.startsWith("--", i)) {
+        final int end = sql.indexOf('\n', i);
+        i = end < 0 ? sql.length() : end + 1;
+      } else if (sql.startsWith("/*", i)) {
+        final int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? sql.length() : end + 2;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Time spent in the database by the statements sharing a fingerprint, as tracked by {@link
+ * JdbcMetrics#getTopStatements()}. Values are decayed over time and may be overestimated by up to
+ * {@link #getErrorMicros()} for statements that entered the tracker late.
+ */
+public final class StatementStatistics {
+
+  private final String fingerprint;
+  private final String statement;
+  private final long count;
+  private final long totalMicros;
+  private final long maxMicros;
+  private final long errorMicros;
+
+  @ConstructorProperties({"fingerprint", "statement", "count", "totalMicros", "maxMicros",
+      "errorMicros"})
+  public StatementStatistics(String fingerprint, String statement, long count, long totalMicros,
+      long maxMicros, long errorMicros) {
+    this.fingerprint = fingerprint;
+    this.statement = statement;
+    this.count = count;
+    this.totalMicros = totalMicros;
+    this.maxMicros = maxMicros;
+    this.errorMicros = errorMicros;
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * @return The normalized statement.
+   */
+  public String getStatement() {
+    return statement;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getTotalMicros() {
+    return totalMicros;
+  }
+
+  public long getMaxMicros() {
+    return maxMicros;
+  }
+
+  /**
+   * @return The most {@link #getTotalMicros()} may be overestimated by.
+   */
+  public long getErrorMicros() {
+    return errorMicros;
+  }
+
+  @Override
+  public String toString() {
+    return "StatementStatistics{" +
+        "fingerprint='" + fingerprint + '\'' +
+        ", statement='" + statement + '\'' +
+        ", count=" + count +
+        ", totalMicros=" + totalMicros +
+        ", maxMicros=" + maxMicros +
+        ", errorMicros=" + errorMicros +
+        '}';
+  }
+}
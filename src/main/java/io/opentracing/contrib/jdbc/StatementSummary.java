@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import io.opentracing.Span;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per fingerprint count, total, min and max duration, and error count of the statements executed
+ * while a span was active. Usually updated by the single thread the span is active on, but
+ * synchronized as a span may be active on several threads.
+ */
+final class StatementSummary {
+
+  static final String EVENT = "db.statement.summary";
+
+  /**
+   * Distinct fingerprints tracked, further statements are accumulated in an overflow entry.
+   */
+  static final int MAX_ENTRIES = 32;
+
+  static final String OVERFLOW_FINGERPRINT = "other";
+
+  private final String[] fingerprints = new String[MAX_ENTRIES + 1];
+  private final String[] statements = new String[MAX_ENTRIES + 1];
+  private final int[] counts = new int[MAX_ENTRIES + 1];
+  private final int[] errors = new int[MAX_ENTRIES + 1];
+  private final long[] totalNanos = new long[MAX_ENTRIES + 1];
+  private final long[] minNanos = new long[MAX_ENTRIES + 1];
+  private final long[] maxNanos = new long[MAX_ENTRIES + 1];
+  private int size;
+
+  synchronized void record(NormalizedSql sql, long durationNanos, boolean error) {
+    final int index = indexOf(sql);
+    if (counts[index] == 0 || durationNanos < minNanos[index]) {
+      minNanos[index] = durationNanos;
+    }
+    if (durationNanos > maxNanos[index]) {
+      maxNanos[index] = durationNanos;
+    }
+    counts[index]++;
+    totalNanos[index] += durationNanos;
+    if (error) {
+      errors[index]++;
+    }
+  }
+
+  private int indexOf(NormalizedSql sql) {
+    final String fingerprint = sql.getFingerprint();
+    for (int i = 0; i < size; i++) {
+      if (fingerprints[i].equals(fingerprint)) {
+        return i;
+      }
+    }
+    if (size < MAX_ENTRIES) {
+      fingerprints[size] = fingerprint;
+      statements[size] = sql.getSql();
+      return size++;
+    }
+    fingerprints[MAX_ENTRIES] = OVERFLOW_FINGERPRINT;
+    return MAX_ENTRIES;
+  }
+
+  synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Logs the summary on the span as a single event. Fields are prefixed by the statement
+   * fingerprint.
+   */
+  synchronized void flush(Span span) {
+    final Map<String, Object> fields = new HashMap<>();
+    fields.put("event", EVENT);
+    for (int i = 0; i <= MAX_ENTRIES; i++) {
+      if (counts[i] == 0) {
+        continue;
+      }
+      final String prefix = fingerprints[i] + '.';
+      if (statements[i] != null) {
+        fields.put(prefix + "statement", statements[i]);
+      }
+      fields.put(prefix + "count", counts[i]);
+      fields.put(prefix + "total_ns", totalNanos[i]);
+      fields.put(prefix + "min_ns", minNanos[i]);
+      fields.put(prefix + "max_ns", maxNanos[i]);
+      fields.put(prefix + "errors", errors[i]);
+    }
+    span.log(fields);
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * {@link ScopeManager} decorator required by the {@code aggregateStatements} mode. While a span is
+ * active, traced statements executed on the same thread are accumulated in a {@link
+ * StatementSummary} of that span instead of being reported as child spans. The summary is logged
+ * on the span once its last scope is closed, whichever thread closes it, so nested activations of a
+ * span share a single summary.
+ *
+ * <pre>{@code
+ * Tracer tracer = new MockTracer(new StatementSummaryScopeManager(new ThreadLocalScopeManager()));
+ * }</pre>
+ */
+public class StatementSummaryScopeManager implements ScopeManager {
+
+  private static final Logger log = Logger.getLogger(StatementSummaryScopeManager.class.getName());
+
+  private static volatile boolean warnedMissingScopeManager;
+
+  private final ScopeManager delegate;
+  /**
+   * The summaries of the spans activated or retained, by span identity. Spans are weakly
+   * referenced, so that the summaries of spans never deactivated nor released are dropped.
+   */
+  private final ConcurrentMap<Object, SpanSummary> summaries = new ConcurrentHashMap<>();
+  private final ReferenceQueue<Span> collectedSpans = new ReferenceQueue<>();
+
+  public StatementSummaryScopeManager(ScopeManager delegate) {
+    if (delegate == null) {
+      throw new IllegalArgumentException("delegate can not be null");
+    }
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return The summary of the span active on the current thread, or {@code null} when the tracer
+   * does not use a {@code StatementSummaryScopeManager} or no span is active.
+   */
+  static StatementSummary activeSummary(Tracer tracer) {
+    final ScopeManager scopeManager = tracer.scopeManager();
+    if (!(scopeManager instanceof StatementSummaryScopeManager)) {
+      if (!warnedMissingScopeManager) {
+        warnedMissingScopeManager = true;
+        log.warning("aggregateStatements is enabled but the tracer does not use a "
+            + "StatementSummaryScopeManager, statements are traced as spans");
+      }
+      return null;
+    }
+    final StatementSummaryScopeManager manager = (StatementSummaryScopeManager) scopeManager;
+    final Span span = manager.delegate.activeSpan();
+    if (span == null) {
+      return null;
+    }
+    final SpanSummary summary = manager.summaries.get(new SpanLookup(span));
+    return summary == null ? null : summary.summary();
+  }
+
+  /**
+   * Keep the summary of a span activated repeatedly, one statement at a time, until {@link
+   * #release(Tracer, Span)} instead of logging it whenever the span is deactivated.
+   */
+  static void retain(Tracer tracer, Span span) {
+    final ScopeManager scopeManager = tracer.scopeManager();
+    if (scopeManager instanceof StatementSummaryScopeManager) {
+      ((StatementSummaryScopeManager) scopeManager).acquire(span, true);
+    }
+  }
+
+  /**
+   * Log the summary kept by {@link #retain(Tracer, Span)}, unless the span is still active.
+   */
+  static void release(Tracer tracer, Span span) {
+    final ScopeManager scopeManager = tracer.scopeManager();
+    if (scopeManager instanceof StatementSummaryScopeManager) {
+      final StatementSummaryScopeManager manager = (StatementSummaryScopeManager) scopeManager;
+      final SpanSummary summary = manager.summaries.get(new SpanLookup(span));
+      if (summary != null) {
+        manager.release(span, summary, true);
+      }
+    }
+  }
+
+  @Override
+  public Scope activate(Span span) {
+    final SpanSummary summary = acquire(span, false);
+    return new SummaryScope(span, summary, delegate.activate(span));
+  }
+
+  @Override
+  public Span activeSpan() {
+    return delegate.activeSpan();
+  }
+
+  /**
+   * Adds a scope, or the retention, to the summary of the span.
+   */
+  private SpanSummary acquire(Span span, boolean retain) {
+    expungeCollectedSpans();
+    for (; ; ) {
+      SpanSummary summary = summaries.get(new SpanLookup(span));
+      if (summary == null) {
+        final SpanSummary created = new SpanSummary(new SpanKey(span, collectedSpans));
+        summary = summaries.putIfAbsent(created.key, created);
+        if (summary == null) {
+          summary = created;
+        }
+      }
+      synchronized (summary) {
+        if (!summary.flushed) {
+          if (retain) {
+            summary.retained = true;
+          } else {
+            summary.depth++;
+          }
+          return summary;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes a scope, or the retention, from the summary of the span, logging it once unused.
+   */
+  private void release(Span span, SpanSummary summary, boolean retention) {
+    final StatementSummary unused;
+    synchronized (summary) {
+      if (retention) {
+        summary.retained = false;
+      } else {
+        summary.depth--;
+      }
+      if (summary.depth > 0 || summary.retained || summary.flushed) {
+        return;
+      }
+      summary.flushed = true;
+      summaries.remove(summary.key, summary);
+      unused = summary.summary;
+    }
+    if (unused != null && !unused.isEmpty()) {
+      unused.flush(span);
+    }
+  }
+
+  private void expungeCollectedSpans() {
+    Reference<? extends Span> collected;
+    while ((collected = collectedSpans.poll()) != null) {
+      summaries.remove(collected);
+    }
+  }
+
+  /**
+   * The summary of a span, with the number of scopes of that span open on any thread.
+   */
+  private static final class SpanSummary {
+    private final SpanKey key;
+    private StatementSummary summary;
+    private int depth;
+    private boolean retained;
+    private boolean flushed;
+
+    private SpanSummary(SpanKey key) {
+      this.key = key;
+    }
+
+    private synchronized StatementSummary summary() {
+      if (summary == null) {
+        summary = new StatementSummary();
+      }
+      return summary;
+    }
+  }
+
+  /**
+   * Weak key comparing spans by identity.
+   */
+  private static final class SpanKey extends WeakReference<Span> {
+    private final int hash;
+
+    private SpanKey(Span span, ReferenceQueue<Span> queue) {
+      super(span, queue);
+      this.hash = System.identityHashCode(span);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return this == obj;
+    }
+  }
+
+  /**
+   * Looks up the {@link SpanKey} of a span without registering a reference.
+   */
+  private static final class SpanLookup {
+    private final Span span;
+
+    private SpanLookup(Span span) {
+      this.span = span;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(span);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof SpanKey && ((SpanKey) obj).get() == span;
+    }
+  }
+
+  private final class SummaryScope implements Scope {
+    private final Span span;
+    private final SpanSummary summary;
+    private final Scope scope;
+    private boolean closed;
+
+    private SummaryScope(Span span, SpanSummary summary, Scope scope) {
+      this.span = span;
+      this.summary = summary;
+      this.scope = scope;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        release(span, summary, false);
+      }
+      scope.close();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.Set;
+
+/**
+ * The SQL of a statement together with what is derived from it for every span: whether it is
+ * ignored and its normalized form. Both are computed on first use and then reused, so a {@link
+ * TracingPreparedStatement} executed many times derives them once.
+ */
+final class StatementTemplate {
+
+  static final StatementTemplate NONE = new StatementTemplate(null, null);
+
+  private static final byte UNKNOWN = 0;
+  private static final byte IGNORED = 1;
+  private static final byte TRACED = 2;
+
+  private final String sql;
+  private final Set<String> ignoreStatements;
+  private byte ignored = UNKNOWN;
+  private NormalizedSql normalized;
+  private String operationName;
+
+  StatementTemplate(String sql, Set<String> ignoreStatements) {
+    this.sql = sql;
+    this.ignoreStatements = ignoreStatements;
+  }
+
+  static StatementTemplate of(String sql, Set<String> ignoreStatements) {
+    return sql == null ? NONE : new StatementTemplate(sql, ignoreStatements);
+  }
+
+  String getSql() {
+    return sql;
+  }
+
+  boolean hasSql() {
+    return sql != null && !sql.isEmpty();
+  }
+
+  boolean isIgnored() {
+    if (ignored == UNKNOWN) {
+      ignored = ignoreStatements != null && ignoreStatements.contains(sql) ? IGNORED : TRACED;
+    }
+    return ignored == IGNORED;
+  }
+
+  /**
+   * @return The operation name derived from the SQL, or {@code defaultName} if there is none.
+   */
+  String getOperationName(String defaultName, int maxNames) {
+    String operationName = this.operationName;
+    if (operationName == null) {
+      operationName = hasSql() ? SqlOperationNames.operationName(sql, maxNames) : null;
+      if (operationName == null) {
+        return defaultName;
+      }
+      this.operationName = operationName;
+    }
+    return operationName;
+  }
+
+  /**
+   * @return The normalized SQL, only valid if {@link #hasSql()}.
+   */
+  NormalizedSql getNormalized() {
+    NormalizedSql normalized = this.normalized;
+    if (normalized == null) {
+      normalized = SqlNormalizer.normalize(sql);
+      this.normalized = normalized;
+    }
+    return normalized;
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Space-Saving heavy hitters sketch of the statement fingerprints by total time. Memory is bounded
+ * by the number of tracked statements, whatever the number of distinct statements: when the sketch
+ * is full, a new statement replaces the one with the least total time and inherits that time as
+ * its possible overestimation. Totals and counts are halved every {@link #DECAY_INTERVAL_NANOS}, so
+ * the sketch follows the recent load.
+ *
+ * <p>Recording a tracked statement only updates its adders. A new statement is recorded in a
+ * pending candidate. Candidates are admitted into the sketch in batches, by whichever thread gets
+ * the lock without waiting for it, with a single sort of the sketch per batch. Workloads producing
+ * a new fingerprint on almost every call therefore neither serialize their statements on the
+ * eviction nor scan the sketch for each of them. A batch evicts the lightest of the tracked
+ * statements and candidates, and the admitted candidates inherit the heaviest evicted total. A
+ * recording racing with the eviction of its entry, or of a new statement while the candidates are
+ * full, may be lost.
+ */
+final class TopStatements implements TopStatementsMXBean {
+
+  static final long DECAY_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  /**
+   * Candidates admitted at once.
+   */
+  private static final int ADMISSION_BATCH = 16;
+
+  private final int size;
+  private final int admissionBatch;
+  private final Map<String, Entry> entries;
+  /**
+   * New statements waiting to be admitted, at most {@link #size}.
+   */
+  private final Map<String, Entry> candidates;
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile long lastDecayNanos = System.nanoTime();
+
+  TopStatements(int size) {
+    this.size = size;
+    this.admissionBatch = Math.min(size, ADMISSION_BATCH);
+    this.entries = new ConcurrentHashMap<>(size * 2);
+    this.candidates = new ConcurrentHashMap<>(size * 2);
+  }
+
+  int getSize() {
+    return size;
+  }
+
+  void record(NormalizedSql sql, long durationNanos) {
+    record(sql, durationNanos, System.nanoTime());
+  }
+
+  void record(NormalizedSql sql, long durationNanos, long nowNanos) {
+    if (nowNanos - lastDecayNanos >= DECAY_INTERVAL_NANOS && lock.tryLock()) {
+      try {
+        decay(nowNanos);
+      } finally {
+        lock.unlock();
+      }
+    }
+    Entry entry = entries.get(sql.getFingerprint());
+    if (entry == null) {
+      entry = candidate(sql);
+      if (entry == null) {
+        return;
+      }
+    }
+    entry.count.increment();
+    entry.total.add(durationNanos);
+    entry.max.accumulate(durationNanos);
+  }
+
+  /**
+   * @return The candidate of a new statement, or {@code null} if the candidates are full.
+   */
+  private Entry candidate(NormalizedSql sql) {
+    Entry entry = candidates.get(sql.getFingerprint());
+    if (entry == null) {
+      if (candidates.size() >= size) {
+        tryAdmitCandidates();
+        if (candidates.size() >= size) {
+          return null;
+        }
+      }
+      entry = candidates.computeIfAbsent(sql.getFingerprint(), key -> new Entry(sql));
+      if (candidates.size() >= admissionBatch) {
+        tryAdmitCandidates();
+      }
+    }
+    return entry;
+  }
+
+  private void tryAdmitCandidates() {
+    if (lock.tryLock()) {
+      try {
+        admitCandidates();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Moves the candidates into the sketch, evicting the lightest entries once it is full. Called
+   * with the lock held.
+   */
+  private void admitCandidates() {
+    if (candidates.isEmpty()) {
+      return;
+    }
+    final List<Entry> admitted = new ArrayList<>(candidates.size());
+    for (Entry candidate : candidates.values()) {
+      candidates.remove(candidate.fingerprint);
+      final Entry tracked = entries.get(candidate.fingerprint);
+      if (tracked != null) {
+        tracked.merge(candidate);
+      } else {
+        admitted.add(candidate);
+      }
+    }
+    final int overflow = entries.size() + admitted.size() - size;
+    long inheritedNanos = 0;
+    if (overflow > 0) {
+      final List<Entry> all = new ArrayList<>(entries.values());
+      all.addAll(admitted);
+      for (Entry entry : all) {
+        entry.sortTotal = entry.total.sum();
+      }
+      all.sort((a, b) -> Long.compare(a.sortTotal, b.sortTotal));
+      for (Entry evicted : all.subList(0, overflow)) {
+        if (!entries.remove(evicted.fingerprint, evicted)) {
+          evicted.evicted = true;
+        }
+      }
+      inheritedNanos = all.get(overflow - 1).sortTotal;
+    }
+    for (Entry candidate : admitted) {
+      if (!candidate.evicted) {
+        candidate.inherit(inheritedNanos);
+        entries.put(candidate.fingerprint, candidate);
+      }
+    }
+  }
+
+  /**
+   * Called with the lock held.
+   */
+  private void decay(long nowNanos) {
+    admitCandidates();
+    while (nowNanos - lastDecayNanos >= DECAY_INTERVAL_NANOS) {
+      lastDecayNanos += DECAY_INTERVAL_NANOS;
+      entries.values().removeIf(Entry::halve);
+      if (entries.isEmpty()) {
+        lastDecayNanos = nowNanos;
+      }
+    }
+  }
+
+  @Override
+  public List<StatementStatistics> getTopStatements() {
+    return getTopStatements(System.nanoTime());
+  }
+
+  List<StatementStatistics> getTopStatements(long nowNanos) {
+    lock.lock();
+    try {
+      decay(nowNanos);
+    } finally {
+      lock.unlock();
+    }
+    final List<StatementStatistics> result = new ArrayList<>();
+    for (Entry entry : entries.values()) {
+      result.add(entry.toStatistics());
+    }
+    result.sort((a, b) -> Long.compare(b.getTotalMicros(), a.getTotalMicros()));
+    return result;
+  }
+
+  private static final class Entry {
+    private final String fingerprint;
+    private final String statement;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private volatile long errorNanos;
+    /**
+     * The total while the candidates are admitted, guarded by the lock.
+     */
+    private long sortTotal;
+    private boolean evicted;
+
+    private Entry(NormalizedSql sql) {
+      this.fingerprint = sql.getFingerprint();
+      this.statement = sql.getSql();
+    }
+
+    /**
+     * Takes over the total time of the evicted entry, as its possible overestimation.
+     */
+    private void inherit(long inheritedNanos) {
+      total.add(inheritedNanos);
+      errorNanos = inheritedNanos;
+    }
+
+    /**
+     * Adds the recordings of a candidate of the same statement, admitted concurrently.
+     */
+    private void merge(Entry candidate) {
+      count.add(candidate.count.sum());
+      total.add(candidate.total.sum());
+      max.accumulate(candidate.max.get());
+    }
+
+    /**
+     * @return Whether the entry has no count left.
+     */
+    private boolean halve() {
+      final long currentCount = count.sum();
+      final long currentTotal = total.sum();
+      count.add((currentCount >> 1) - currentCount);
+      total.add((currentTotal >> 1) - currentTotal);
+      errorNanos >>= 1;
+      return currentCount >> 1 == 0;
+    }
+
+    private StatementStatistics toStatistics() {
+      return new StatementStatistics(fingerprint, statement, count.sum(),
+          TimeUnit.NANOSECONDS.toMicros(total.sum()), TimeUnit.NANOSECONDS.toMicros(max.get()),
+          TimeUnit.NANOSECONDS.toMicros(errorNanos));
+    }
+  }
+}
@@ -43,7 +43,15 @@ public class TracingCallableStatement extends TracingPreparedStatement implement
   public TracingCallableStatement(CallableStatement statement, String query,
       ConnectionInfo connectionInfo, boolean withActiveSpanOnly, Set<String> ignoreStatements,
       Tracer tracer) {
-    super(statement, query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    this(statement, query, connectionInfo, withActiveSpanOnly,
+        IgnoreStatementMatcher.compile(ignoreStatements), tracer, null);
+  }
+
+  TracingCallableStatement(CallableStatement statement, String query,
+      ConnectionInfo connectionInfo, boolean withActiveSpanOnly, Set<String> ignoreStatements,
+      Tracer tracer, Transaction transaction) {
+    super(statement, query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer,
+        transaction);
     this.statement = statement;
   }
 
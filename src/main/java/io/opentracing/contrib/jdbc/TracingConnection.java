@@ -13,8 +13,8 @@
  */
 package io.opentracing.contrib.jdbc;
 
+import io.opentracing.Scope;
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -41,30 +41,33 @@ public class TracingConnection implements Connection {
   private final boolean withActiveSpanOnly;
   private final Set<String> ignoreStatements;
   private final Tracer tracer;
+  private final ConnectionLeakDetector.Tracked leakHandle;
+  private final Transaction transaction;
 
   public TracingConnection(Connection connection, ConnectionInfo connectionInfo,
       boolean withActiveSpanOnly, Set<String> ignoreStatements, Tracer tracer) {
     this.connection = connection;
     this.connectionInfo = connectionInfo;
     this.withActiveSpanOnly = withActiveSpanOnly;
-    this.ignoreStatements = ignoreStatements;
+    this.ignoreStatements = IgnoreStatementMatcher.compile(ignoreStatements);
     this.tracer = tracer;
+    this.leakHandle = ConnectionLeakDetector.INSTANCE.track(this, connectionInfo);
+    this.transaction = new Transaction(connection, connectionInfo, withActiveSpanOnly, tracer);
   }
 
   @Override
   public Statement createStatement() throws SQLException {
     final Statement statement = connection.createStatement();
-    return WrapperProxy
-        .wrap(statement, new TracingStatement(statement, connectionInfo, withActiveSpanOnly,
-            ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingStatement(statement, connectionInfo,
+        withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
   public Statement createStatement(int resultSetType, int resultSetConcurrency)
       throws SQLException {
     final Statement statement = connection.createStatement(resultSetType, resultSetConcurrency);
-    return WrapperProxy.wrap(statement, new TracingStatement(statement,
-        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingStatement(statement,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
@@ -72,15 +75,15 @@ public class TracingConnection implements Connection {
       int resultSetHoldability) throws SQLException {
     final Statement statement = connection
         .createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-    return WrapperProxy.wrap(statement, new TracingStatement(statement,
-        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingStatement(statement,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql) throws SQLException {
     final PreparedStatement statement = connection.prepareStatement(sql);
-    return WrapperProxy.wrap(statement, new TracingPreparedStatement(statement, sql, connectionInfo,
-        withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingPreparedStatement(statement, sql,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
@@ -88,8 +91,8 @@ public class TracingConnection implements Connection {
       throws SQLException {
     final PreparedStatement statement = connection
         .prepareStatement(sql, resultSetType, resultSetConcurrency);
-    return WrapperProxy.wrap(statement, new TracingPreparedStatement(statement, sql, connectionInfo,
-        withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingPreparedStatement(statement, sql,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
@@ -97,37 +100,37 @@ public class TracingConnection implements Connection {
       int resultSetHoldability) throws SQLException {
     final PreparedStatement statement = connection
         .prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-    return WrapperProxy.wrap(statement, new TracingPreparedStatement(statement,
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingPreparedStatement(statement,
+        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
     final PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
-    return WrapperProxy.wrap(statement, new TracingPreparedStatement(statement, sql,
-        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingPreparedStatement(statement, sql,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
     final PreparedStatement statement = connection.prepareStatement(sql, columnIndexes);
-    return WrapperProxy.wrap(statement, new TracingPreparedStatement(statement, sql,
-        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingPreparedStatement(statement, sql,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
     final PreparedStatement statement = connection.prepareStatement(sql, columnNames);
-    return WrapperProxy.wrap(statement, new TracingPreparedStatement(statement, sql, connectionInfo,
-        withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingPreparedStatement(statement, sql,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
   public CallableStatement prepareCall(String sql) throws SQLException {
     final CallableStatement statement = connection.prepareCall(sql);
-    return WrapperProxy.wrap(statement,
+    return JdbcTracingUtils.wrap(statement,
         new TracingCallableStatement(statement, sql, connectionInfo,
-            withActiveSpanOnly, ignoreStatements, tracer));
+            withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
@@ -135,8 +138,8 @@ public class TracingConnection implements Connection {
       throws SQLException {
     final CallableStatement statement = connection
         .prepareCall(sql, resultSetType, resultSetConcurrency);
-    return WrapperProxy.wrap(statement, new TracingCallableStatement(statement, sql, connectionInfo,
-        withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingCallableStatement(statement, sql,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
@@ -144,26 +147,39 @@ public class TracingConnection implements Connection {
       int resultSetHoldability) throws SQLException {
     final CallableStatement statement = connection
         .prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-    return WrapperProxy.wrap(statement, new TracingCallableStatement(statement, sql,
-        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(statement, new TracingCallableStatement(statement, sql,
+        connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, transaction));
   }
 
   @Override
   public void commit() throws SQLException {
-    JdbcTracingUtils.execute("Commit", connection::commit, null,
-        connectionInfo, withActiveSpanOnly, null, tracer);
+    try (Scope ignored = transaction.activate()) {
+      JdbcTracingUtils.execute("Commit", connection::commit, null,
+          connectionInfo, withActiveSpanOnly, null, tracer);
+    } finally {
+      transaction.end();
+    }
   }
 
   @Override
   public void rollback() throws SQLException {
-    JdbcTracingUtils.execute("Rollback", connection::rollback, null,
-        connectionInfo, withActiveSpanOnly, null, tracer);
+    try (Scope ignored = transaction.activate()) {
+      JdbcTracingUtils.execute("Rollback", connection::rollback, null,
+          connectionInfo, withActiveSpanOnly, null, tracer);
+    } finally {
+      transaction.end();
+    }
   }
 
   @Override
   public void close() throws SQLException {
-    JdbcTracingUtils.execute("Close", connection::close, null,
-        connectionInfo, withActiveSpanOnly, null, tracer);
+    transaction.end();
+    try {
+      JdbcTracingUtils.execute("Close", connection::close, null,
+          connectionInfo, withActiveSpanOnly, null, tracer);
+    } finally {
+      ConnectionLeakDetector.INSTANCE.closed(leakHandle);
+    }
   }
 
   @Override
@@ -174,6 +190,7 @@ public class TracingConnection implements Connection {
   @Override
   public void setAutoCommit(boolean autoCommit) throws SQLException {
     connection.setAutoCommit(autoCommit);
+    transaction.setAutoCommit(autoCommit);
   }
 
   @Override
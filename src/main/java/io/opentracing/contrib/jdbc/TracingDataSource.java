@@ -15,7 +15,9 @@ package io.opentracing.contrib.jdbc;
 
 
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
+import io.opentracing.Span;
+import io.opentracing.contrib.jdbc.JdbcTracingUtils.CheckedCallable;
+import io.opentracing.contrib.jdbc.JdbcTracingUtils.SpanFinishListener;
 import io.opentracing.contrib.jdbc.parser.URLParser;
 import java.io.PrintWriter;
 import java.lang.reflect.Method;
@@ -24,18 +26,28 @@ import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
 public class TracingDataSource implements DataSource, AutoCloseable {
   private static final boolean DEFAULT_WITH_ACTIVE_SPAN_ONLY = false;
   private static final Set<String> DEFAULT_IGNORED_STATEMENTS = Collections.emptySet();
+  private static final AtomicLong ids = new AtomicLong();
 
   private final Tracer tracer;
   private final DataSource underlying;
   private final ConnectionInfo connectionInfo;
   private final boolean withActiveSpanOnly;
   private final Set<String> ignoreStatements;
+  private final ConnectionAcquisition acquisition = new ConnectionAcquisition();
+  private final SpanFinishListener acquisitionListener = this::tagAcquisition;
+  /**
+   * Whether the acquisition statistics were registered as an MBean or the data source is closed.
+   */
+  private volatile boolean registered;
+  private ObjectName acquisitionName;
 
   public TracingDataSource(final Tracer tracer,
       final DataSource underlying) {
@@ -66,34 +78,80 @@ public class TracingDataSource implements DataSource, AutoCloseable {
     }
     this.connectionInfo = info;
     this.withActiveSpanOnly = withActiveSpanOnly;
-    this.ignoreStatements = ignoreStatements;
+    this.ignoreStatements = IgnoreStatementMatcher.compile(ignoreStatements);
+  }
+
+  /**
+   * Registers the acquisition statistics on the first acquisition, so that data sources never
+   * used, and never closed, are not kept registered.
+   */
+  private synchronized void registerAcquisition() {
+    if (!registered) {
+      registered = true;
+      acquisitionName = JdbcMetrics.register(acquisition, ConnectionAcquisitionMXBean.class,
+          "type=ConnectionAcquisition,peer=" + ObjectName.quote(
+              String.valueOf(connectionInfo.getPeerService()))
+              + ",id=" + ids.incrementAndGet());
+    }
   }
 
   public DataSource getUnderlying() {
     return underlying;
   }
 
+  /**
+   * @return The latency of the connection acquisitions and the threads waiting for a connection.
+   */
+  public ConnectionAcquisitionMXBean getConnectionAcquisition() {
+    return acquisition;
+  }
+
   @Override
   public Connection getConnection() throws SQLException {
-    final Connection connection = JdbcTracingUtils
-        .call("AcquireConnection", underlying::getConnection,
-            null, connectionInfo, withActiveSpanOnly, null, tracer);
+    final Connection connection = acquire(underlying::getConnection);
 
-    return WrapperProxy
-        .wrap(connection, new TracingConnection(connection, connectionInfo, withActiveSpanOnly,
-            ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(connection, new TracingConnection(connection, connectionInfo,
+        withActiveSpanOnly, ignoreStatements, tracer));
   }
 
   @Override
   public Connection getConnection(final String username, final String password)
       throws SQLException {
-    final Connection connection = JdbcTracingUtils.call("AcquireConnection", () ->
-            underlying.getConnection(username, password), null, connectionInfo,
-        withActiveSpanOnly, null, tracer);
+    final Connection connection = acquire(() -> underlying.getConnection(username, password));
 
-    return WrapperProxy
-        .wrap(connection, new TracingConnection(connection, connectionInfo, withActiveSpanOnly,
-            ignoreStatements, tracer));
+    return JdbcTracingUtils.wrap(connection, new TracingConnection(connection, connectionInfo,
+        withActiveSpanOnly, ignoreStatements, tracer));
+  }
+
+  /**
+   * Counts the waiting threads, which the span is tagged with, and records the wait whether it is
+   * traced or not.
+   */
+  private Connection acquire(CheckedCallable<Connection, SQLException> callable)
+      throws SQLException {
+    if (!registered && JdbcTracing.getConfig().isMetricsEnabled()) {
+      registerAcquisition();
+    }
+    acquisition.enter();
+    final long startNanos = System.nanoTime();
+    try {
+      return JdbcTracingUtils.call("AcquireConnection", callable, StatementTemplate.NONE,
+          connectionInfo, withActiveSpanOnly, tracer, acquisitionListener);
+    } finally {
+      acquisition.exit(System.nanoTime() - startNanos, JdbcTracing.getConfig());
+    }
+  }
+
+  /**
+   * Tags the span with the threads still waiting once the connection is acquired, including the
+   * caller, which has not exited yet.
+   */
+  private void tagAcquisition(Span span, long durationNanos) {
+    final int waiters = acquisition.getWaitingThreads();
+    JdbcTracingUtils.POOL_WAITERS.set(span, waiters);
+    if (ConnectionAcquisition.isSaturated(durationNanos, JdbcTracing.getConfig())) {
+      JdbcTracingUtils.POOL_SATURATED.set(span, true);
+    }
   }
 
   @Override
@@ -133,6 +191,13 @@ public class TracingDataSource implements DataSource, AutoCloseable {
 
   @Override
   public void close() throws Exception {
+    synchronized (this) {
+      registered = true;
+      if (acquisitionName != null) {
+        JdbcMetrics.unregister(acquisitionName);
+        acquisitionName = null;
+      }
+    }
     if (underlying instanceof AutoCloseable) {
       ((AutoCloseable) underlying).close();
     }
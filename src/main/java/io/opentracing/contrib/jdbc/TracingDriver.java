@@ -14,9 +14,9 @@
 package io.opentracing.contrib.jdbc;
 
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
 import io.opentracing.contrib.jdbc.parser.URLParser;
 import io.opentracing.util.GlobalTracer;
+import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
@@ -26,12 +26,14 @@ import java.sql.SQLFeatureNotSupportedException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class TracingDriver implements Driver {
@@ -46,6 +48,16 @@ public class TracingDriver implements Driver {
 
   protected static final Pattern PATTERN_FOR_IGNORING = Pattern.compile(IGNORE_FOR_TRACING_REGEX);
 
+  /**
+   * {@link DriverManager} does not notify driver registrations, so resolved drivers are looked up
+   * again after this interval to pick up drivers registered or deregistered since.
+   */
+  static final long DRIVER_CACHE_TTL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private static final int MAX_CACHED_DRIVERS = 64;
+
+  private static final Map<String, CachedDriver> driverCache = new ConcurrentHashMap<>();
+
   static {
     try {
       DriverManager.registerDriver(INSTANCE);
@@ -88,9 +100,20 @@ public class TracingDriver implements Driver {
       }
     } catch (SQLException e) {
       throw new IllegalStateException("Could not register TracingDriver with DriverManager", e);
+    } finally {
+      invalidateDriverCache();
     }
   }
 
+  /**
+   * Forget the drivers resolved for the wrapped urls. Call after registering or deregistering
+   * drivers with {@link DriverManager} for the change to take effect immediately rather than
+   * after a few seconds.
+   */
+  public static void invalidateDriverCache() {
+    driverCache.clear();
+  }
+
   /**
    * Sets the {@code traceEnabled} property to enable or disable traces.
    *
@@ -134,11 +157,21 @@ public class TracingDriver implements Driver {
    * @param ignoreStatements The {@code ignoreStatements} value.
    */
   public static void setInterceptorProperty(final Set<String> ignoreStatements) {
-    TracingDriver.ignoreStatements = ignoreStatements;
+    TracingDriver.ignoreStatements = IgnoreStatementMatcher.compile(ignoreStatements);
   }
 
   protected Tracer tracer;
 
+  private static final int MAX_CACHED_URLS = 256;
+
+  private final Map<String, TracingUrl> urlCache = new ConcurrentHashMap<>();
+
+  /**
+   * Whether a subclass customizes the url parsing, otherwise urls are parsed in a single scan.
+   */
+  private final boolean customUrlExtraction = overrides(getClass(), "extractRealUrl")
+      || overrides(getClass(), "extractIgnoredStatements");
+
   @Override
   public Connection connect(String url, Properties info) throws SQLException {
     // if there is no url, we have problems
@@ -148,17 +181,20 @@ public class TracingDriver implements Driver {
 
     final Set<String> ignoreStatements;
     final boolean withActiveSpanOnly;
+    final TracingUrl tracingUrl;
     if (interceptorMode) {
+      tracingUrl = tracingUrl(url);
       withActiveSpanOnly = TracingDriver.withActiveSpanOnly;
       ignoreStatements = TracingDriver.ignoreStatements;
     } else if (acceptsURL(url)) {
-      withActiveSpanOnly = url.contains(WITH_ACTIVE_SPAN_ONLY);
-      ignoreStatements = extractIgnoredStatements(url);
+      tracingUrl = tracingUrl(url);
+      withActiveSpanOnly = tracingUrl.isWithActiveSpanOnly();
+      ignoreStatements = tracingUrl.getIgnoreStatements();
     } else {
       return null;
     }
 
-    url = extractRealUrl(url);
+    url = tracingUrl.getRealUrl();
 
     // find the real driver for the URL
     final Driver wrappedDriver = findDriver(url);
@@ -170,9 +206,8 @@ public class TracingDriver implements Driver {
             wrappedDriver.connect(realUrl, info), null, connectionInfo, withActiveSpanOnly,
         null, currentTracer);
 
-    return WrapperProxy
-        .wrap(connection, new TracingConnection(connection, connectionInfo, withActiveSpanOnly,
-            ignoreStatements, currentTracer));
+    return JdbcTracingUtils.wrap(connection, new TracingConnection(connection, connectionInfo,
+        withActiveSpanOnly, ignoreStatements, currentTracer));
   }
 
   @Override
@@ -219,44 +254,101 @@ public class TracingDriver implements Driver {
     return "jdbc:tracing:";
   }
 
+  /**
+   * Find the driver of the real url. The driver resolved for a url prefix, E.g. {@code jdbc:h2:},
+   * is cached and only checked to still accept the url, so that connecting does not go through
+   * {@link DriverManager#getDrivers()} every time.
+   */
   protected Driver findDriver(String realUrl) throws SQLException {
+    return findDriver(realUrl, System.nanoTime());
+  }
+
+  /**
+   * @param now The current {@link System#nanoTime()}, cached drivers older than {@link
+   *            #DRIVER_CACHE_TTL_NANOS} are resolved again.
+   */
+  Driver findDriver(String realUrl, long now) throws SQLException {
     if (realUrl == null || realUrl.trim().length() == 0) {
       throw new IllegalArgumentException("url is required");
     }
 
+    final String prefix = driverCacheKey(realUrl);
+    final CachedDriver cached = driverCache.get(prefix);
+    if (cached != null && now - cached.resolvedAtNanos < DRIVER_CACHE_TTL_NANOS) {
+      final Driver driver = cached.driver.get();
+      if (driver != null && accepts(driver, realUrl)) {
+        return driver;
+      }
+    }
+
     for (Driver candidate : Collections.list(DriverManager.getDrivers())) {
-      try {
-        if (!(candidate instanceof TracingDriver) && candidate.acceptsURL(realUrl)) {
-          return candidate;
+      if (!(candidate instanceof TracingDriver) && accepts(candidate, realUrl)) {
+        if (driverCache.size() >= MAX_CACHED_DRIVERS) {
+          driverCache.clear();
         }
-      } catch (SQLException ignored) {
-        // intentionally ignore exception
+        driverCache.put(prefix, new CachedDriver(candidate, now));
+        return candidate;
       }
     }
 
     throw new SQLException("Unable to find a driver that accepts url: " + realUrl);
   }
 
-  protected String extractRealUrl(String url) {
-    String extracted = url.startsWith(getUrlPrefix()) ? url.replace(getUrlPrefix(), "jdbc:") : url;
-    return extracted.replaceAll(TRACE_WITH_ACTIVE_SPAN_ONLY + "=(true|false)[;]*", "")
-        .replaceAll(IGNORE_FOR_TRACING_REGEX, "")
-        .replaceAll("\\?$", "");
+  private static boolean accepts(Driver driver, String url) {
+    try {
+      return driver.acceptsURL(url);
+    } catch (SQLException ignored) {
+      // intentionally ignore exception
+      return false;
+    }
   }
 
-  protected Set<String> extractIgnoredStatements(String url) {
-
-    final Matcher matcher = PATTERN_FOR_IGNORING.matcher(url);
+  /**
+   * @return The url up to and including the sub-protocol, E.g. {@code jdbc:h2:}, lower case.
+   */
+  private static String driverCacheKey(String url) {
+    final int subProtocolEnd = url.indexOf(':', url.indexOf(':') + 1);
+    return (subProtocolEnd < 0 ? url : url.substring(0, subProtocolEnd + 1))
+        .toLowerCase(Locale.ROOT);
+  }
 
-    Set<String> results = new HashSet<>(8);
+  /**
+   * @return The properties of the url, extracted once per distinct url.
+   */
+  private TracingUrl tracingUrl(String url) {
+    TracingUrl tracingUrl = urlCache.get(url);
+    if (tracingUrl == null) {
+      final TracingUrl parsed = customUrlExtraction
+          ? new TracingUrl(extractRealUrl(url), url.contains(WITH_ACTIVE_SPAN_ONLY),
+          extractIgnoredStatements(url))
+          : TracingUrl.parse(url, getUrlPrefix());
+      tracingUrl = new TracingUrl(parsed.getRealUrl(), parsed.isWithActiveSpanOnly(),
+          IgnoreStatementMatcher.compile(parsed.getIgnoreStatements()));
+      if (urlCache.size() >= MAX_CACHED_URLS) {
+        urlCache.clear();
+      }
+      urlCache.put(url, tracingUrl);
+    }
+    return tracingUrl;
+  }
 
-    while (matcher.find()) {
-      String rawValue = matcher.group(1);
-      String finalValue = rawValue.replace("\\\"", "\"");
-      results.add(finalValue);
+  private static boolean overrides(Class<?> type, String urlMethod) {
+    for (Class<?> c = type; c != TracingDriver.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod(urlMethod, String.class);
+        return true;
+      } catch (NoSuchMethodException ignored) {
+      }
     }
+    return false;
+  }
+
+  protected String extractRealUrl(String url) {
+    return TracingUrl.parse(url, getUrlPrefix()).getRealUrl();
+  }
 
-    return results;
+  protected Set<String> extractIgnoredStatements(String url) {
+    return TracingUrl.parse(url, getUrlPrefix()).getIgnoreStatements();
   }
 
   Tracer getTracer() {
@@ -265,4 +357,18 @@ public class TracingDriver implements Driver {
     }
     return tracer;
   }
+
+  /**
+   * The driver is weakly referenced so that the cache does not keep a deregistered driver, and its
+   * class loader, alive.
+   */
+  private static final class CachedDriver {
+    private final WeakReference<Driver> driver;
+    private final long resolvedAtNanos;
+
+    private CachedDriver(Driver driver, long resolvedAtNanos) {
+      this.driver = new WeakReference<>(driver);
+      this.resolvedAtNanos = resolvedAtNanos;
+    }
+  }
 }
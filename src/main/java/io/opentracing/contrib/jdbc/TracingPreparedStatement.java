@@ -41,31 +41,43 @@ public class TracingPreparedStatement extends TracingStatement implements Prepar
 
   private final PreparedStatement preparedStatement;
   private final String query;
+  private final StatementTemplate template;
 
   public TracingPreparedStatement(PreparedStatement preparedStatement, String query,
       ConnectionInfo connectionInfo, boolean withActiveSpanOnly, Set<String> ignoreStatements,
       Tracer tracer) {
-    super(preparedStatement, query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    this(preparedStatement, query, connectionInfo, withActiveSpanOnly,
+        IgnoreStatementMatcher.compile(ignoreStatements), tracer, null);
+  }
+
+  TracingPreparedStatement(PreparedStatement preparedStatement, String query,
+      ConnectionInfo connectionInfo, boolean withActiveSpanOnly, Set<String> ignoreStatements,
+      Tracer tracer, Transaction transaction) {
+    super(preparedStatement, query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer,
+        transaction);
     this.preparedStatement = preparedStatement;
     this.query = query;
+    this.template = StatementTemplate.of(query, this.ignoreStatements);
   }
 
   @Override
   public ResultSet executeQuery() throws SQLException {
-    return JdbcTracingUtils.call("Query", preparedStatement::executeQuery,
-        query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return traceResultSet(call("Query", preparedStatement::executeQuery, template));
   }
 
   @Override
   public int executeUpdate() throws SQLException {
-    return JdbcTracingUtils.call("Update", preparedStatement::executeUpdate,
-        query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Update", preparedStatement::executeUpdate, template);
+  }
+
+  @Override
+  public long executeLargeUpdate() throws SQLException {
+    return call("Update", preparedStatement::executeLargeUpdate, template);
   }
 
   @Override
   public boolean execute() throws SQLException {
-    return JdbcTracingUtils.call("Execute", preparedStatement::execute,
-        query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Execute", preparedStatement::execute, template);
   }
 
   @Override
@@ -172,6 +184,7 @@ public class TracingPreparedStatement extends TracingStatement implements Prepar
   @Override
   public void addBatch() throws SQLException {
     preparedStatement.addBatch();
+    addBatchParameters();
   }
 
   @Override
@@ -14,103 +14,149 @@
 package io.opentracing.contrib.jdbc;
 
 
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.contrib.jdbc.JdbcTracingUtils.CheckedCallable;
+import io.opentracing.contrib.jdbc.JdbcTracingUtils.SpanFinishListener;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Set;
 
 public class TracingStatement implements Statement {
 
   private final Statement statement;
   private final String query;
-  private final ArrayList<String> batchCommands = new ArrayList<>();
+  private BatchSummary batch;
+  private int batchSize;
   final ConnectionInfo connectionInfo;
   final boolean withActiveSpanOnly;
   final Set<String> ignoreStatements;
   final Tracer tracer;
+  private SpanContext executionContext;
+  private long executionStartNanos;
+  private int executingBatchSize;
+  private final SpanFinishListener executionListener = this::beforeFinish;
+  private TracingResultSet resultSet;
+  /**
+   * {@link #resultSet}, exposing the vendor interfaces of the driver result set.
+   */
+  private ResultSet wrappedResultSet;
+  private final Transaction transaction;
 
   TracingStatement(Statement statement, ConnectionInfo connectionInfo, boolean withActiveSpanOnly,
-      Set<String> ignoreStatements, Tracer tracer) {
-    this(statement, null, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+      Set<String> ignoreStatements, Tracer tracer, Transaction transaction) {
+    this(statement, null, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer,
+        transaction);
   }
 
   TracingStatement(Statement statement, String query, ConnectionInfo connectionInfo,
       boolean withActiveSpanOnly, Set<String> ignoreStatements, Tracer tracer) {
+    this(statement, query, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer, null);
+  }
+
+  /**
+   * @param ignoreStatements Already compiled by {@link IgnoreStatementMatcher#compile(Set)}, once
+   * per connection rather than per statement.
+   */
+  TracingStatement(Statement statement, String query, ConnectionInfo connectionInfo,
+      boolean withActiveSpanOnly, Set<String> ignoreStatements, Tracer tracer,
+      Transaction transaction) {
     this.statement = statement;
     this.query = query;
     this.connectionInfo = connectionInfo;
     this.withActiveSpanOnly = withActiveSpanOnly;
     this.ignoreStatements = ignoreStatements;
     this.tracer = tracer;
+    this.transaction = transaction;
   }
 
   @Override
   public ResultSet executeQuery(String sql) throws SQLException {
-    return JdbcTracingUtils.call("Query", () -> statement.executeQuery(sql),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return traceResultSet(call("Query", () -> statement.executeQuery(sql), sql));
   }
 
   @Override
   public int executeUpdate(String sql) throws SQLException {
-    return JdbcTracingUtils.call("Update", () -> statement.executeUpdate(sql),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Update", () -> statement.executeUpdate(sql), sql);
   }
 
   @Override
   public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
-    return JdbcTracingUtils.call("Update", () -> statement.executeUpdate(sql, autoGeneratedKeys),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Update", () -> statement.executeUpdate(sql, autoGeneratedKeys), sql);
   }
 
   @Override
   public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
-    return JdbcTracingUtils.call("Update", () -> statement.executeUpdate(sql, columnIndexes),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Update", () -> statement.executeUpdate(sql, columnIndexes), sql);
   }
 
   @Override
   public int executeUpdate(String sql, String[] columnNames) throws SQLException {
-    return JdbcTracingUtils.call("Update", () -> statement.executeUpdate(sql, columnNames),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Update", () -> statement.executeUpdate(sql, columnNames), sql);
   }
 
   @Override
   public boolean execute(String sql) throws SQLException {
-    return JdbcTracingUtils.call("Execute", () -> statement.execute(sql),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Execute", () -> statement.execute(sql), sql);
   }
 
   @Override
   public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
-    return JdbcTracingUtils.call("Execute", () -> statement.execute(sql, autoGeneratedKeys),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Execute", () -> statement.execute(sql, autoGeneratedKeys), sql);
   }
 
   @Override
   public boolean execute(String sql, int[] columnIndexes) throws SQLException {
-    return JdbcTracingUtils.call("Execute", () -> statement.execute(sql, columnIndexes),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Execute", () -> statement.execute(sql, columnIndexes), sql);
   }
 
   @Override
   public boolean execute(String sql, String[] columnNames) throws SQLException {
-    return JdbcTracingUtils.call("Execute", () -> statement.execute(sql, columnNames),
-        sql, connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return call("Execute", () -> statement.execute(sql, columnNames), sql);
   }
 
   @Override
   public int[] executeBatch() throws SQLException {
-    return JdbcTracingUtils.call("Update", statement::executeBatch,
-        buildSqlForBatch(), connectionInfo, withActiveSpanOnly, ignoreStatements, tracer);
+    return callBatch(statement::executeBatch);
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql) throws SQLException {
+    return call("Update", () -> statement.executeLargeUpdate(sql), sql);
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+    return call("Update", () -> statement.executeLargeUpdate(sql, autoGeneratedKeys), sql);
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+    return call("Update", () -> statement.executeLargeUpdate(sql, columnIndexes), sql);
+  }
+
+  @Override
+  public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+    return call("Update", () -> statement.executeLargeUpdate(sql, columnNames), sql);
+  }
+
+  @Override
+  public long[] executeLargeBatch() throws SQLException {
+    return callBatch(statement::executeLargeBatch);
   }
 
   @Override
   public void close() throws SQLException {
-    statement.close();
+    try {
+      statement.close();
+    } finally {
+      finishResultSet();
+    }
   }
 
   @Override
@@ -133,6 +179,16 @@ public class TracingStatement implements Statement {
     statement.setMaxRows(max);
   }
 
+  @Override
+  public long getLargeMaxRows() throws SQLException {
+    return statement.getLargeMaxRows();
+  }
+
+  @Override
+  public void setLargeMaxRows(long max) throws SQLException {
+    statement.setLargeMaxRows(max);
+  }
+
   @Override
   public void setEscapeProcessing(boolean enable) throws SQLException {
     statement.setEscapeProcessing(enable);
@@ -170,7 +226,7 @@ public class TracingStatement implements Statement {
 
   @Override
   public ResultSet getResultSet() throws SQLException {
-    return statement.getResultSet();
+    return traceResultSet(statement.getResultSet());
   }
 
   @Override
@@ -178,8 +234,14 @@ public class TracingStatement implements Statement {
     return statement.getUpdateCount();
   }
 
+  @Override
+  public long getLargeUpdateCount() throws SQLException {
+    return statement.getLargeUpdateCount();
+  }
+
   @Override
   public boolean getMoreResults() throws SQLException {
+    finishResultSet();
     return statement.getMoreResults();
   }
 
@@ -216,13 +278,17 @@ public class TracingStatement implements Statement {
   @Override
   public void addBatch(String sql) throws SQLException {
     statement.addBatch(sql);
-    batchCommands.add(sql);
+    batchSize++;
+    if (batch == null) {
+      batch = new BatchSummary();
+    }
+    batch.add(sql);
   }
 
   @Override
   public void clearBatch() throws SQLException {
     statement.clearBatch();
-    batchCommands.clear();
+    resetBatch();
   }
 
   @Override
@@ -232,12 +298,15 @@ public class TracingStatement implements Statement {
 
   @Override
   public boolean getMoreResults(int current) throws SQLException {
+    if (current == CLOSE_CURRENT_RESULT || current == CLOSE_ALL_RESULTS) {
+      finishResultSet();
+    }
     return statement.getMoreResults(current);
   }
 
   @Override
   public ResultSet getGeneratedKeys() throws SQLException {
-    return statement.getGeneratedKeys();
+    return traceResultSet(statement.getGeneratedKeys());
   }
 
   @Override
@@ -289,14 +358,100 @@ public class TracingStatement implements Statement {
     return getQuery();
   }
 
+  /**
+   * Trace the execution of this statement, as part of the transaction of the connection if any. A
+   * new execution implicitly closes the current result set.
+   */
+  <T, E extends Exception> T call(String operationName, CheckedCallable<T, E> callable,
+      String sql) throws E {
+    return call(operationName, callable, StatementTemplate.of(sql, ignoreStatements));
+  }
+
+  <T, E extends Exception> T call(String operationName, CheckedCallable<T, E> callable,
+      StatementTemplate statement) throws E {
+    finishResultSet();
+    executionContext = null;
+    executionStartNanos = System.nanoTime();
+    if (transaction == null) {
+      return JdbcTracingUtils.call(operationName, callable, statement, connectionInfo,
+          withActiveSpanOnly, tracer, executionListener);
+    }
+    try (Scope ignored = transaction.beginStatement()) {
+      return JdbcTracingUtils.call(operationName, callable, statement, connectionInfo,
+          withActiveSpanOnly, tracer, executionListener);
+    }
+  }
+
+  private <T> T callBatch(CheckedCallable<T, SQLException> callable) throws SQLException {
+    executingBatchSize = batchSize;
+    try {
+      return call("Update", callable, buildSqlForBatch());
+    } finally {
+      executingBatchSize = 0;
+      resetBatch();
+    }
+  }
+
+  /**
+   * Wrap a result set of the last execution, if that execution was traced and result sets are
+   * traced.
+   */
+  ResultSet traceResultSet(ResultSet resultSet) {
+    final SpanContext parent = executionContext;
+    if (resultSet == null || parent == null || !JdbcTracing.getConfig().isTraceResultSets()) {
+      return resultSet;
+    }
+    if (this.resultSet != null) {
+      if (this.resultSet.isWrapping(resultSet)) {
+        return wrappedResultSet;
+      }
+      this.resultSet.finish();
+    }
+    this.resultSet = new TracingResultSet(resultSet, this, parent, executionStartNanos,
+        connectionInfo, tracer);
+    wrappedResultSet = JdbcTracingUtils.wrap(resultSet, this.resultSet);
+    return wrappedResultSet;
+  }
+
+  private void finishResultSet() {
+    if (resultSet != null) {
+      resultSet.finish();
+      resultSet = null;
+      wrappedResultSet = null;
+    }
+  }
+
+  /**
+   * Count a parameter set added to the batch of a prepared statement.
+   */
+  void addBatchParameters() {
+    batchSize++;
+  }
+
+  private void resetBatch() {
+    batchSize = 0;
+    if (batch != null) {
+      batch.clear();
+    }
+  }
+
+  private void beforeFinish(Span span, long durationNanos) {
+    executionContext = span.context();
+    if (executingBatchSize > 0) {
+      JdbcTracingUtils.BATCH_SIZE.set(span, executingBatchSize);
+      JdbcTracingUtils.BATCH_ROW_AVG_NANOS
+          .set(span, durationNanos / executingBatchSize);
+    }
+  }
+
   private String buildSqlForBatch() {
     StringBuilder sqlBuilder = new StringBuilder();
     if (query != null) {
       sqlBuilder.append(query);
     }
 
-    for (String batchCommand : batchCommands) {
-      sqlBuilder.append(batchCommand);
+    if (batch != null) {
+      batch.appendTo(sqlBuilder);
     }
 
     return sqlBuilder.toString();
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The properties of a tracing JDBC url, extracted in a single scan: the url of the real driver,
+ * {@code traceWithActiveSpanOnly} and the {@code ignoreForTracing} statements. Equivalent to the
+ * regular expressions {@link TracingDriver#IGNORE_FOR_TRACING_REGEX} and {@code
+ * traceWithActiveSpanOnly=(true|false)[;]*}.
+ */
+final class TracingUrl {
+
+  private static final String ACTIVE_SPAN_ONLY_KEY =
+      TracingDriver.TRACE_WITH_ACTIVE_SPAN_ONLY + '=';
+  private static final String IGNORE_KEY = "ignoreForTracing=\"";
+
+  private final String realUrl;
+  private final boolean withActiveSpanOnly;
+  private final Set<String> ignoreStatements;
+
+  TracingUrl(String realUrl, boolean withActiveSpanOnly, Set<String> ignoreStatements) {
+    this.realUrl = realUrl;
+    this.withActiveSpanOnly = withActiveSpanOnly;
+    this.ignoreStatements = ignoreStatements;
+  }
+
+  /**
+   * @param tracingPrefix Replaced by {@code jdbc:} if the url starts with it.
+   */
+  static TracingUrl parse(String url, String tracingPrefix) {
+    final StringBuilder realUrl = new StringBuilder(url.length());
+    final Set<String> ignoreStatements = new HashSet<>(8);
+    boolean withActiveSpanOnly = false;
+
+    int i = 0;
+    if (url.startsWith(tracingPrefix)) {
+      realUrl.append("jdbc:");
+      i = tracingPrefix.length();
+    }
+    while (i < url.length()) {
+      final char c = url.charAt(i);
+      if (c == 't' && url.startsWith(ACTIVE_SPAN_ONLY_KEY, i)) {
+        final int valueStart = i + ACTIVE_SPAN_ONLY_KEY.length();
+        final int valueEnd = url.startsWith("true", valueStart) ? valueStart + 4
+            : url.startsWith("false", valueStart) ? valueStart + 5 : -1;
+        if (valueEnd > 0) {
+          withActiveSpanOnly |= valueEnd - valueStart == 4;
+          i = skipSemicolons(url, valueEnd);
+          continue;
+        }
+      } else if (c == 'i' && url.startsWith(IGNORE_KEY, i)) {
+        final int valueStart = i + IGNORE_KEY.length();
+        final int valueEnd = closingQuote(url, valueStart);
+        if (valueEnd > 0) {
+          ignoreStatements.add(url.substring(valueStart, valueEnd).replace("\\\"", "\""));
+          i = skipSemicolons(url, valueEnd + 1);
+          continue;
+        }
+      }
+      realUrl.append(c);
+      i++;
+    }
+
+    final int last = realUrl.length() - 1;
+    if (last >= 0 && realUrl.charAt(last) == '?') {
+      realUrl.setLength(last);
+    }
+    return new TracingUrl(realUrl.toString(), withActiveSpanOnly, ignoreStatements);
+  }
+
+  /**
+   * @return The index of the quote closing the value, quotes escaped by {@code \} excluded unless
+   * there is no other closing quote, or {@code -1}.
+   */
+  private static int closingQuote(String url, int start) {
+    int lastEscapedQuote = -1;
+    int i = start;
+    while (i < url.length()) {
+      final char c = url.charAt(i);
+      if (c == '\\' && i + 1 < url.length() && url.charAt(i + 1) == '"') {
+        lastEscapedQuote = i + 1;
+        i += 2;
+      } else if (c == '"') {
+        return i;
+      } else {
+        i++;
+      }
+    }
+    return lastEscapedQuote;
+  }
+
+  private static int skipSemicolons(String url, int start) {
+    int i = start;
+    while (i < url.length() && url.charAt(i) == ';') {
+      i++;
+    }
+    return i;
+  }
+
+  String getRealUrl() {
+    return realUrl;
+  }
+
+  boolean isWithActiveSpanOnly() {
+    return withActiveSpanOnly;
+  }
+
+  Set<String> getIgnoreStatements() {
+    return ignoreStatements;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The transactions of a connection whose auto-commit is turned off, traced when {@link
+ * JdbcTracingConfig#isTraceTransactions()}. A "Transaction" span starts with the first statement,
+ * when locks start being taken, is active while the statements, the commit and the rollback of the
+ * transaction execute, so that their spans are its children, and finishes when the transaction
+ * ends. Like a connection, it is not thread safe.
+ *
+ * <p>The auto-commit mode is read from the connection before its first statement traced this way,
+ * so that connections handed out with auto-commit already off are traced too, then followed
+ * through {@link #setAutoCommit(boolean)}.
+ */
+final class Transaction {
+
+  private final Connection connection;
+  private final ConnectionInfo connectionInfo;
+  private final boolean withActiveSpanOnly;
+  private final Tracer tracer;
+  /**
+   * {@code null} until read from the connection.
+   */
+  private Boolean autoCommit;
+  private Span span;
+  private long startNanos;
+  private int statements;
+
+  Transaction(Connection connection, ConnectionInfo connectionInfo, boolean withActiveSpanOnly,
+      Tracer tracer) {
+    this.connection = connection;
+    this.connectionInfo = connectionInfo;
+    this.withActiveSpanOnly = withActiveSpanOnly;
+    this.tracer = tracer;
+  }
+
+  /**
+   * Called once the auto-commit mode of the connection is changed. Turning auto-commit on commits
+   * the current transaction.
+   */
+  void setAutoCommit(boolean autoCommit) {
+    if (autoCommit) {
+      end();
+    }
+    this.autoCommit = autoCommit;
+  }
+
+  /**
+   * Called before a statement executes, starts the transaction if none is in progress.
+   *
+   * @return The scope of the transaction span, to close once the statement is executed, {@code
+   * null} if the transaction is not traced.
+   */
+  Scope beginStatement() {
+    if (span == null) {
+      if (!JdbcTracing.getConfig().isTraceTransactions() || isAutoCommit()) {
+        return null;
+      }
+      startNanos = System.nanoTime();
+      span = JdbcTracingUtils.buildSpan("Transaction", connectionInfo, withActiveSpanOnly, tracer,
+          startNanos);
+      if (!(span instanceof NoopSpan)) {
+        StatementSummaryScopeManager.retain(tracer, span);
+      }
+    }
+    statements++;
+    return activate();
+  }
+
+  private boolean isAutoCommit() {
+    if (autoCommit == null) {
+      try {
+        autoCommit = connection.getAutoCommit();
+      } catch (SQLException e) {
+        // the statement will likely fail the same way, left untraced as a transaction
+        return true;
+      }
+    }
+    return autoCommit;
+  }
+
+  /**
+   * @return The scope of the transaction span, {@code null} if no transaction is in progress or
+   * it is not traced.
+   */
+  Scope activate() {
+    return span == null || span instanceof NoopSpan ? null : tracer.activateSpan(span);
+  }
+
+  /**
+   * Called once the transaction is committed or rolled back.
+   */
+  void end() {
+    if (span == null) {
+      return;
+    }
+    final long durationNanos = System.nanoTime() - startNanos;
+    if (!(span instanceof NoopSpan)) {
+      JdbcTracingUtils.TRANSACTION_STATEMENTS.set(span, statements);
+      JdbcTracingUtils.TRANSACTION_LOCK_NANOS.set(span, durationNanos);
+      StatementSummaryScopeManager.release(tracer, span);
+      span.finish();
+    }
+    span = null;
+    statements = 0;
+  }
+}
@@ -14,8 +14,9 @@
 package io.opentracing.contrib.jdbc.parser;
 
 import io.opentracing.contrib.jdbc.ConnectionInfo;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,29 +31,61 @@ public class URLParser {
   private static final String SQLSERVER_JDBC_URL_PREFIX = "jdbc:sqlserver";
   private static final String DB2_JDBC_URL_PREFIX = "jdbc:db2";
   private static final String AS400_JDBC_URL_PREFIX = "jdbc:as400";
-  private static final Map<String, ConnectionURLParser> parserRegister = new LinkedHashMap<>();
+
+  /**
+   * Immutable, replaced as a whole when a parser is registered so that lookups need no lock.
+   */
+  private static volatile Node parserRegister = new Node();
+
+  /**
+   * Count of registered prefixes, the registration order of the next new prefix.
+   */
+  private static int registrations;
+
+  /**
+   * Applications connect to a handful of URLs, more distinct URLs than this empty the cache.
+   */
+  private static final int MAX_CACHED_URLS = 256;
+
+  private static final Map<String, ConnectionInfo> cache = new ConcurrentHashMap<>();
 
   static {
     // put mysql parser firstly
-    parserRegister.put(MYSQL_JDBC_URL_PREFIX, new MysqlURLParser());
-    parserRegister.put(ORACLE_JDBC_URL_PREFIX, new OracleURLParser());
-    parserRegister.put(H2_JDBC_URL_PREFIX, new H2URLParser());
-    parserRegister.put(POSTGRESQL_JDBC_URL_PREFIX, new PostgreSQLURLParser());
-    parserRegister.put(MARIADB_JDBC_URL_PREFIX, new MariadbURLParser());
-    parserRegister.put(SQLSERVER_JDBC_URL_PREFIX, new SqlServerURLParser());
-    parserRegister.put(DB2_JDBC_URL_PREFIX, new DB2URLParser());
-    parserRegister.put(AS400_JDBC_URL_PREFIX, new AS400URLParser());
+    registerConnectionParser(MYSQL_JDBC_URL_PREFIX, new MysqlURLParser());
+    registerConnectionParser(ORACLE_JDBC_URL_PREFIX, new OracleURLParser());
+    registerConnectionParser(H2_JDBC_URL_PREFIX, new H2URLParser());
+    registerConnectionParser(POSTGRESQL_JDBC_URL_PREFIX, new PostgreSQLURLParser());
+    registerConnectionParser(MARIADB_JDBC_URL_PREFIX, new MariadbURLParser());
+    registerConnectionParser(SQLSERVER_JDBC_URL_PREFIX, new SqlServerURLParser());
+    registerConnectionParser(DB2_JDBC_URL_PREFIX, new DB2URLParser());
+    registerConnectionParser(AS400_JDBC_URL_PREFIX, new AS400URLParser());
   }
 
   /**
-   * parse the url to the ConnectionInfo
+   * parse the url to the ConnectionInfo, results are cached per url
    */
   public static ConnectionInfo parse(String url) {
     if (null == url) {
       return ConnectionInfo.UNKNOWN_CONNECTION_INFO;
     }
-    String lowerCaseUrl = url.toLowerCase();
-    ConnectionURLParser parser = findURLParser(lowerCaseUrl);
+    ConnectionInfo connectionInfo = cache.get(url);
+    if (connectionInfo == null) {
+      final Node register = parserRegister;
+      connectionInfo = parseUncached(register, url);
+      if (cache.size() >= MAX_CACHED_URLS) {
+        cache.clear();
+      }
+      cache.put(url, connectionInfo);
+      if (register != parserRegister) {
+        // a parser was registered meanwhile, do not keep what the previous one parsed
+        cache.remove(url);
+      }
+    }
+    return connectionInfo;
+  }
+
+  private static ConnectionInfo parseUncached(Node register, String url) {
+    ConnectionURLParser parser = register.find(url);
     if (parser == null) {
       return ConnectionInfo.UNKNOWN_CONNECTION_INFO;
     }
@@ -72,22 +105,93 @@ public class URLParser {
     return parse(url);
   }
 
-  private static ConnectionURLParser findURLParser(String lowerCaseUrl) {
-    for (Map.Entry<String, ConnectionURLParser> entry : parserRegister.entrySet()) {
-      if (lowerCaseUrl.startsWith(entry.getKey())) {
-        return entry.getValue();
-      }
+  /**
+   * register new ConnectionURLParser. Can override existing parser, keeping its place in the
+   * registration order. The parser of the first registered prefix matching a url, ignoring case, is
+   * used.
+   */
+  public static synchronized void registerConnectionParser(String urlPrefix,
+      ConnectionURLParser parser) {
+    if (null == urlPrefix || parser == null) {
+      throw new IllegalArgumentException("urlPrefix and parser can not be null");
     }
-    return null;
+    parserRegister = parserRegister.with(urlPrefix, 0, parser, registrations);
+    registrations++;
+    cache.clear();
   }
 
   /**
-   * register new ConnectionURLParser. Can override existing parser.
+   * Node of a prefix trie keyed by lower case characters. Children are looked up by a linear scan
+   * as url prefixes branch little.
    */
-  public static void registerConnectionParser(String urlPrefix, ConnectionURLParser parser) {
-    if (null == urlPrefix || parser == null) {
-      throw new IllegalArgumentException("urlPrefix and parser can not be null");
+  private static final class Node {
+    private final char[] keys;
+    private final Node[] children;
+    private final ConnectionURLParser parser;
+    /**
+     * Registration order of the prefix ending at this node, if it has a parser.
+     */
+    private final int order;
+
+    private Node() {
+      this(new char[0], new Node[0], null, 0);
+    }
+
+    private Node(char[] keys, Node[] children, ConnectionURLParser parser, int order) {
+      this.keys = keys;
+      this.children = children;
+      this.parser = parser;
+      this.order = order;
+    }
+
+    /**
+     * @return The parser of the first registered prefix of the url.
+     */
+    ConnectionURLParser find(String url) {
+      Node found = parser != null ? this : null;
+      Node node = this;
+      for (int i = 0; i < url.length(); i++) {
+        node = node.child(Character.toLowerCase(url.charAt(i)));
+        if (node == null) {
+          break;
+        }
+        if (node.parser != null && (found == null || node.order < found.order)) {
+          found = node;
+        }
+      }
+      return found != null ? found.parser : null;
+    }
+
+    /**
+     * @return A copy of this node with the parser registered for the prefix from {@code index},
+     * sharing the unchanged subtrees. A prefix registered again keeps its order.
+     */
+    Node with(String prefix, int index, ConnectionURLParser parser, int order) {
+      if (index == prefix.length()) {
+        return new Node(keys, children, parser, this.parser != null ? this.order : order);
+      }
+      final char key = Character.toLowerCase(prefix.charAt(index));
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == key) {
+          final Node[] copy = children.clone();
+          copy[i] = children[i].with(prefix, index + 1, parser, order);
+          return new Node(keys, copy, this.parser, this.order);
+        }
+      }
+      final char[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+      final Node[] newChildren = Arrays.copyOf(children, children.length + 1);
+      newKeys[keys.length] = key;
+      newChildren[children.length] = new Node().with(prefix, index + 1, parser, order);
+      return new Node(newKeys, newChildren, this.parser, this.order);
+    }
+
+    private Node child(char key) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == key) {
+          return children[i];
+        }
+      }
+      return null;
     }
-    parserRegister.put(urlPrefix.toLowerCase(), parser);
   }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BatchSummaryTest {
+
+  @Test
+  public void groupsByFingerprint() {
+    final BatchSummary batch = new BatchSummary();
+    batch.add("INSERT INTO t VALUES (1)");
+    batch.add("INSERT INTO t VALUES (2)");
+    batch.add("INSERT INTO t VALUES (2)");
+    batch.add("DELETE FROM t");
+
+    final StringBuilder sql = new StringBuilder();
+    batch.appendTo(sql);
+    assertEquals(4, batch.getCount());
+    assertEquals("/* 3x */ INSERT INTO t VALUES (?); DELETE FROM t", sql.toString());
+  }
+
+  @Test
+  public void boundedText() {
+    final BatchSummary batch = new BatchSummary();
+    final StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < BatchSummary.MAX_LENGTH; i++) {
+      longValue.append('x');
+    }
+    for (int i = 0; i < 100_000; i++) {
+      batch.add("INSERT INTO t" + (i % 100) + " VALUES ('" + longValue + "')");
+    }
+
+    final StringBuilder sql = new StringBuilder();
+    batch.appendTo(sql);
+    assertEquals(100_000, batch.getCount());
+    assertTrue(sql.length() <= BatchSummary.MAX_LENGTH);
+  }
+
+  @Test
+  public void clear() {
+    final BatchSummary batch = new BatchSummary();
+    batch.add("DELETE FROM t");
+    batch.clear();
+
+    final StringBuilder sql = new StringBuilder();
+    batch.appendTo(sql);
+    assertEquals(0, batch.getCount());
+    assertEquals("", sql.toString());
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import io.opentracing.contrib.jdbc.parser.URLParser;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ConnectionInfoTest {
+
+  private final MockTracer tracer = new MockTracer();
+
+  @Test
+  public void decorateSetsTheTagsOfEverySpan() {
+    final List<ConnectionInfo> connectionInfos = Arrays.asList(
+        ConnectionInfo.UNKNOWN_CONNECTION_INFO,
+        new ConnectionInfo.Builder("localhost", 3306).dbType("mysql").dbUser("root")
+            .dbInstance("shop").build(),
+        new ConnectionInfo.Builder(null, 3306).dbType("mysql").dbInstance("shop").build(),
+        new ConnectionInfo.Builder("localhost", null).dbType("mysql").dbInstance("shop").build(),
+        new ConnectionInfo.Builder(null, null).dbType("h2").build(),
+        new ConnectionInfo.Builder("host1:1521,host2:1521").dbType("oracle").dbInstance("")
+            .build(),
+        new ConnectionInfo.Builder("").dbType("h2").dbInstance("mem").build(),
+        new ConnectionInfo.Builder(null).build(),
+        URLParser.parse("jdbc:h2:mem:test"),
+        URLParser.parse("jdbc:postgresql://localhost:5432/shop"),
+        URLParser.parse("jdbc:unknown://localhost"));
+
+    for (ConnectionInfo connectionInfo : connectionInfos) {
+      final MockSpan decorated = tracer.buildSpan("decorated").start();
+      connectionInfo.decorate(decorated);
+      final MockSpan expected = tracer.buildSpan("expected").start();
+      setTags(expected, connectionInfo);
+      assertEquals(connectionInfo.getPeerService(), expected.tags(), decorated.tags());
+    }
+  }
+
+  /**
+   * The tags set on every span before they were precomputed.
+   */
+  private static void setTags(MockSpan span, ConnectionInfo connectionInfo) {
+    Tags.COMPONENT.set(span, JdbcTracingUtils.COMPONENT_NAME);
+    if (isNotEmpty(connectionInfo.getDbType())) {
+      Tags.DB_TYPE.set(span, connectionInfo.getDbType());
+    }
+    if (isNotEmpty(connectionInfo.getDbPeer())) {
+      JdbcTracingUtils.PEER_ADDRESS.set(span, connectionInfo.getDbPeer());
+    }
+    if (isNotEmpty(connectionInfo.getDbInstance())) {
+      Tags.DB_INSTANCE.set(span, connectionInfo.getDbInstance());
+    }
+    if (isNotEmpty(connectionInfo.getDbUser())) {
+      Tags.DB_USER.set(span, connectionInfo.getDbUser());
+    }
+    if (isNotEmpty(connectionInfo.getPeerService())) {
+      Tags.PEER_SERVICE.set(span, connectionInfo.getPeerService());
+    }
+  }
+
+  private static boolean isNotEmpty(String s) {
+    return s != null && !s.isEmpty();
+  }
+}
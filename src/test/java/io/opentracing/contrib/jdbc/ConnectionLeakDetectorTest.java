@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.mock.MockTracer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionLeakDetectorTest {
+
+  private final ConnectionLeaksMXBean leaks = JdbcMetrics.getConnectionLeaks();
+  private JdbcTracingConfig previous;
+
+  @Before
+  public void before() {
+    previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.leakDetectionThresholdMs(50)
+        .leakStackTraceSampleRate(1));
+  }
+
+  @After
+  public void after() {
+    JdbcTracing.setConfig(previous);
+  }
+
+  @Test
+  public void reportsLongHeldConnections() throws Exception {
+    final long longHeld = leaks.getLongHeldConnections();
+    final int open = leaks.getOpenConnections();
+
+    final TracingConnection connection = newConnection();
+    assertEquals(open + 1, leaks.getOpenConnections());
+    await(leaks::getLongHeldConnections, longHeld + 1);
+
+    connection.close();
+    assertEquals(open, leaks.getOpenConnections());
+  }
+
+  @Test
+  public void doesNotTrackWhenDisabled() throws Exception {
+    JdbcTracing.setConfig(previous);
+    final int open = leaks.getOpenConnections();
+
+    newConnection();
+    assertEquals(open, leaks.getOpenConnections());
+  }
+
+  @Test
+  public void stopsWhenDisabledAndIdle() throws Exception {
+    final TracingConnection connection = newConnection();
+    assertTrue(ConnectionLeakDetector.INSTANCE.isStarted());
+
+    JdbcTracing.setConfig(previous);
+    Thread.sleep(100);
+    assertTrue(ConnectionLeakDetector.INSTANCE.isStarted());
+
+    final ObjectName name = new ObjectName(JdbcMetrics.DOMAIN + ":type=ConnectionLeaks");
+    assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+    connection.close();
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while ((ConnectionLeakDetector.INSTANCE.isStarted()
+        || ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+        && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(ConnectionLeakDetector.INSTANCE.isStarted());
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+
+  @Test
+  public void reportsUnclosedConnections() throws Exception {
+    final long unclosed = leaks.getUnclosedConnections();
+
+    newConnection();
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (leaks.getUnclosedConnections() == unclosed && System.nanoTime() < deadline) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertEquals(unclosed + 1, leaks.getUnclosedConnections());
+  }
+
+  @Test
+  public void parsesSampleRateLeniently() {
+    final String property = "io.opentracing.contrib.jdbc.leakStackTraceSampleRate";
+    try {
+      System.setProperty(property, "often");
+      assertEquals(JdbcTracingConfig.DEFAULT_LEAK_STACK_TRACE_SAMPLE_RATE,
+          JdbcTracingConfig.fromSystemProperties().getLeakStackTraceSampleRate(), 0);
+      System.setProperty(property, "2");
+      assertEquals(1, JdbcTracingConfig.fromSystemProperties().getLeakStackTraceSampleRate(), 0);
+      System.setProperty(property, "-1");
+      assertEquals(0, JdbcTracingConfig.fromSystemProperties().getLeakStackTraceSampleRate(), 0);
+    } finally {
+      System.clearProperty(property);
+    }
+  }
+
+  private static TracingConnection newConnection() {
+    final Connection connection = (Connection) Proxy.newProxyInstance(
+        ConnectionLeakDetectorTest.class.getClassLoader(), new Class<?>[]{Connection.class},
+        (proxy, method, args) -> {
+          assertNull(args);
+          return null;
+        });
+    return new TracingConnection(connection, ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null,
+        new MockTracer());
+  }
+
+  private static void await(LongSupplier actual, long expected) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (actual.getAsLong() != expected && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, actual.getAsLong());
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+public class IgnoreStatementMatcherTest {
+
+  @Test
+  public void exactRulesAreNotCompiled() {
+    final Set<String> rules = Collections.singleton("SELECT 1");
+    assertSame(rules, IgnoreStatementMatcher.compile(rules));
+    assertSame(null, IgnoreStatementMatcher.compile(null));
+  }
+
+  @Test
+  public void matchesRules() {
+    final Set<String> matcher = IgnoreStatementMatcher.compile(new HashSet<>(Arrays.asList(
+        "SELECT 2",
+        "prefix:SELECT 1",
+        "prefix:VALUES",
+        "regex:(?i)flyway_schema_history",
+        "fingerprint:SELECT * FROM health WHERE id = 1")));
+
+    assertTrue(matcher.contains("SELECT 2"));
+    assertFalse(matcher.contains("SELECT 2 FROM t"));
+    assertTrue(matcher.contains("SELECT 1"));
+    assertTrue(matcher.contains("SELECT 1 FROM DUAL"));
+    assertTrue(matcher.contains("VALUES 1"));
+    assertFalse(matcher.contains("VALUE"));
+    assertTrue(matcher.contains("DELETE FROM FLYWAY_SCHEMA_HISTORY WHERE v = 1"));
+    assertTrue(matcher.contains("SELECT * FROM health WHERE id = 42"));
+    assertFalse(matcher.contains("SELECT * FROM users WHERE id = 42"));
+    // cached decisions
+    assertTrue(matcher.contains("SELECT 1 FROM DUAL"));
+    assertFalse(matcher.contains("SELECT * FROM users WHERE id = 42"));
+    assertFalse(matcher.contains(null));
+  }
+
+  @Test
+  public void matchesFingerprint() {
+    final String fingerprint = SqlNormalizer.normalize("SELECT 1").getFingerprint();
+    final Set<String> matcher = IgnoreStatementMatcher
+        .compile(Collections.singleton("fingerprint:" + fingerprint));
+    assertTrue(matcher.contains("SELECT 2"));
+    assertSame(matcher, IgnoreStatementMatcher.compile(matcher));
+  }
+}
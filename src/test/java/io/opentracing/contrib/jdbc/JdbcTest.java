@@ -15,6 +15,8 @@ package io.opentracing.contrib.jdbc;
 
 import static io.opentracing.contrib.jdbc.TestUtil.checkNoEmptyTags;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import io.opentracing.mock.MockSpan;
@@ -24,10 +26,15 @@ import io.opentracing.util.GlobalTracerTestUtil;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.stream.Collectors;
+import org.h2.jdbc.JdbcResultSetBackwardsCompat;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -129,6 +136,292 @@ public class JdbcTest {
     checkNoEmptyTags(spans);
   }
 
+  @Test
+  public void testWithoutWrapperProxy() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.wrapperProxyEnabled(false));
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      assertTrue(connection instanceof TracingConnection);
+      Statement statement = connection.createStatement();
+      assertTrue(statement instanceof TracingStatement);
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(3, spans.size());
+    checkNoEmptyTags(spans);
+  }
+
+  @Test
+  public void testTraceResultSets() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.traceResultSets(true));
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      statement.executeUpdate("INSERT INTO employer VALUES (1), (2), (3)");
+      try (ResultSet resultSet = statement.executeQuery("SELECT id FROM employer")) {
+        assertTrue("Keeps the vendor interfaces", resultSet instanceof JdbcResultSetBackwardsCompat);
+        assertEquals(statement, resultSet.getStatement());
+        while (resultSet.next()) {
+          resultSet.getInt(1);
+        }
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(6, spans.size());
+    checkNoEmptyTags(spans);
+
+    MockSpan query = spans.get(3);
+    MockSpan fetch = spans.get(4);
+    assertEquals("Query", query.operationName());
+    assertEquals("Fetch", fetch.operationName());
+    assertEquals(query.context().spanId(), fetch.parentId());
+    assertEquals(3L, fetch.tags().get(TracingResultSet.ROWS.getKey()));
+    assertTrue("The first row is timed from the start of the execution",
+        (Long) fetch.tags().get(TracingResultSet.FIRST_ROW_NANOS.getKey())
+            >= (Long) query.tags().get(JdbcTracingUtils.DURATION_NANOS.getKey()));
+    assertTrue(fetch.startMicros() >= query.startMicros());
+  }
+
+  @Test
+  public void testTraceScrollableResultSets() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.traceResultSets(true));
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      Statement statement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+          ResultSet.CONCUR_READ_ONLY);
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      statement.executeUpdate("INSERT INTO employer VALUES (1), (2), (3)");
+      try (ResultSet resultSet = statement.executeQuery("SELECT id FROM employer")) {
+        assertTrue(resultSet.last());
+        assertTrue(resultSet.first());
+        assertTrue(resultSet.absolute(2));
+        assertTrue(resultSet.relative(1));
+        assertTrue(resultSet.previous());
+        assertFalse(resultSet.absolute(10));
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    final MockSpan fetch = mockTracer.finishedSpans().stream()
+        .filter(span -> "Fetch".equals(span.operationName()))
+        .findFirst().get();
+    assertEquals(5L, fetch.tags().get(TracingResultSet.ROWS.getKey()));
+  }
+
+  @Test
+  public void testResultSetOfRateLimitedStatement() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      JdbcTracing.updateConfig(builder -> builder.traceResultSets(true).maxSpansPerSecond(1));
+      try (ResultSet resultSet = statement.executeQuery("SELECT id FROM employer")) {
+        resultSet.next();
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    assertTrue("The fetch of an admitted statement does not take another token",
+        mockTracer.finishedSpans().stream()
+            .anyMatch(span -> "Fetch".equals(span.operationName())));
+  }
+
+  @Test
+  public void testResultSetOfDisabledTracing() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.traceResultSets(true));
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      Statement statement = connection.createStatement();
+      try (ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+        JdbcTracing.updateConfig(builder -> builder.traceEnabled(false));
+        resultSet.next();
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    assertTrue(mockTracer.finishedSpans().stream()
+        .noneMatch(span -> "Fetch".equals(span.operationName())));
+  }
+
+  @Test
+  public void testTransaction() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.traceTransactions(true));
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      connection.setAutoCommit(false);
+      statement.executeUpdate("INSERT INTO employer VALUES (1)");
+      statement.executeUpdate("INSERT INTO employer VALUES (2)");
+      connection.commit();
+      statement.executeUpdate("INSERT INTO employer VALUES (3)");
+      connection.rollback();
+      connection.commit();
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    checkNoEmptyTags(spans);
+    List<MockSpan> transactions = spans.stream()
+        .filter(span -> "Transaction".equals(span.operationName()))
+        .collect(Collectors.toList());
+    assertEquals(2, transactions.size());
+
+    MockSpan committed = transactions.get(0);
+    assertEquals(2, committed.tags().get(JdbcTracingUtils.TRANSACTION_STATEMENTS.getKey()));
+    assertTrue(committed.tags().containsKey(JdbcTracingUtils.TRANSACTION_LOCK_NANOS.getKey()));
+    assertEquals(Arrays.asList("Update", "Update", "Commit"), spans.stream()
+        .filter(span -> span.parentId() == committed.context().spanId())
+        .map(MockSpan::operationName)
+        .collect(Collectors.toList()));
+
+    MockSpan rolledBack = transactions.get(1);
+    assertEquals(1, rolledBack.tags().get(JdbcTracingUtils.TRANSACTION_STATEMENTS.getKey()));
+    assertEquals(Arrays.asList("Update", "Rollback"), spans.stream()
+        .filter(span -> span.parentId() == rolledBack.context().spanId())
+        .map(MockSpan::operationName)
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testTransactionOfConnectionWithoutAutoCommit() throws Exception {
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.traceTransactions(true));
+    Connection raw = DriverManager.getConnection("jdbc:h2:mem:jdbc");
+    raw.setAutoCommit(false);
+    try (Connection connection = new TracingConnection(raw,
+        ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, mockTracer)) {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      statement.executeUpdate("INSERT INTO employer VALUES (1)");
+      connection.commit();
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    MockSpan transaction = spans.stream()
+        .filter(span -> "Transaction".equals(span.operationName()))
+        .findFirst().get();
+    assertEquals(2, transaction.tags().get(JdbcTracingUtils.TRANSACTION_STATEMENTS.getKey()));
+    assertEquals(Arrays.asList("Update", "Update", "Commit"), spans.stream()
+        .filter(span -> span.parentId() == transaction.context().spanId())
+        .map(MockSpan::operationName)
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      for (int i = 0; i < 10; i++) {
+        statement.addBatch("INSERT INTO employer VALUES (" + i + ")");
+      }
+      statement.executeBatch();
+      statement.executeBatch();
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(5, spans.size());
+    checkNoEmptyTags(spans);
+
+    MockSpan batch = spans.get(2);
+    assertEquals("/* 10x */ INSERT INTO employer VALUES (?)",
+        batch.tags().get(Tags.DB_STATEMENT.getKey()));
+    assertEquals(10, batch.tags().get(JdbcTracingUtils.BATCH_SIZE.getKey()));
+    assertNull(spans.get(3).tags().get(JdbcTracingUtils.BATCH_SIZE.getKey()));
+  }
+
+  @Test
+  public void testPreparedBatch() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      connection.createStatement().executeUpdate("CREATE TABLE employer (id INTEGER)");
+      PreparedStatement statement = connection.prepareStatement("INSERT INTO employer VALUES (?)");
+      for (int i = 0; i < 50; i++) {
+        statement.setInt(1, i);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(4, spans.size());
+    checkNoEmptyTags(spans);
+
+    MockSpan batch = spans.get(2);
+    assertEquals("INSERT INTO employer VALUES (?)", batch.tags().get(Tags.DB_STATEMENT.getKey()));
+    assertEquals(50, batch.tags().get(JdbcTracingUtils.BATCH_SIZE.getKey()));
+    assertEquals((Long) batch.tags().get(JdbcTracingUtils.DURATION_NANOS.getKey()) / 50,
+        batch.tags().get(JdbcTracingUtils.BATCH_ROW_AVG_NANOS.getKey()));
+  }
+
+  @Test
+  public void testLargeUpdate() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    try (Connection connection = DriverManager.getConnection("jdbc:tracing:h2:mem:jdbc")) {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      assertEquals(1L, statement.executeLargeUpdate("INSERT INTO employer VALUES (1)"));
+      assertEquals(1L, statement.getLargeUpdateCount());
+      statement.addBatch("INSERT INTO employer VALUES (2)");
+      assertEquals(1, statement.executeLargeBatch().length);
+
+      PreparedStatement prepared = connection.prepareStatement("DELETE FROM employer");
+      assertEquals(2L, prepared.executeLargeUpdate());
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(6, spans.size());
+    checkNoEmptyTags(spans);
+    assertEquals("INSERT INTO employer VALUES (1)",
+        spans.get(2).tags().get(Tags.DB_STATEMENT.getKey()));
+    assertEquals(1, spans.get(3).tags().get(JdbcTracingUtils.BATCH_SIZE.getKey()));
+    assertEquals("DELETE FROM employer", spans.get(4).tags().get(Tags.DB_STATEMENT.getKey()));
+  }
+
+  @Test
+  public void testPreparedStatementIgnoredByPrefix() throws Exception {
+    TracingDriver.setInterceptorMode(false);
+    try (Connection connection = DriverManager
+        .getConnection("jdbc:tracing:h2:mem:jdbc?ignoreForTracing=\"prefix:INSERT\"")) {
+      connection.createStatement().executeUpdate("CREATE TABLE employer (id INTEGER)");
+      PreparedStatement statement = connection.prepareStatement("INSERT INTO employer VALUES (?)");
+      for (int i = 0; i < 3; i++) {
+        statement.setInt(1, i);
+        assertEquals(1, statement.executeUpdate());
+      }
+      PreparedStatement query = connection.prepareStatement("SELECT * FROM employer");
+      query.executeQuery().close();
+      query.executeQuery().close();
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(5, spans.size());
+    checkNoEmptyTags(spans);
+    assertEquals("SELECT * FROM employer", spans.get(2).tags().get(Tags.DB_STATEMENT.getKey()));
+    assertEquals("SELECT * FROM employer", spans.get(3).tags().get(Tags.DB_STATEMENT.getKey()));
+  }
+
   @Test
   public void testFailInterceptor() throws Exception {
     TracingDriver.setInterceptorMode(false);
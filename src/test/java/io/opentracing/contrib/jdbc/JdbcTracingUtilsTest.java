@@ -15,16 +15,25 @@ package io.opentracing.contrib.jdbc;
 
 import static io.opentracing.contrib.jdbc.TestUtil.checkNoEmptyTags;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import io.opentracing.Scope;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
 import io.opentracing.util.GlobalTracerTestUtil;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.management.ObjectName;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -42,13 +51,16 @@ public class JdbcTracingUtilsTest {
   @Before
   public void before() {
     mockTracer.reset();
+    JdbcTracing.setTraceEnabled(true);
     JdbcTracing.setSlowQueryThresholdMs(0);
+    JdbcTracing.setExcludeFastQueryThresholdMs(0);
   }
 
   @AfterClass
   public static void afterClass() {
     TracingDriver.setTraceEnabled(true);
     JdbcTracing.setSlowQueryThresholdMs(0);
+    JdbcTracing.setExcludeFastQueryThresholdMs(0);
   }
 
   @Test
@@ -118,4 +130,392 @@ public class JdbcTracingUtilsTest {
     assertTrue("Span should be tagged with sampling.priority=0",
         fastQuerySpan.tags().containsKey(JdbcTracingUtils.SAMPLING_PRIORITY.getKey()));
   }
+
+  @Test
+  public void spansAreTimestampedByTheTracer() throws Exception {
+    final MockSpan parent = mockTracer.buildSpan("parent").start();
+    try (Scope ignored = mockTracer.activateSpan(parent)) {
+      JdbcTracingUtils.call("Query", () -> 1, "SELECT 1", ConnectionInfo.UNKNOWN_CONNECTION_INFO,
+          false, null, mockTracer);
+    }
+    parent.finish();
+
+    final MockSpan query = mockTracer.finishedSpans().get(0);
+    assertEquals(parent.context().spanId(), query.parentId());
+    assertTrue(query.startMicros() >= parent.startMicros());
+    assertTrue(query.finishMicros() <= parent.finishMicros());
+    assertTrue(query.tags().containsKey(JdbcTracingUtils.DURATION_NANOS.getKey()));
+  }
+
+  @Test
+  public void setExcludeFastTagCorrectlyOnCall() throws Exception {
+    final int excludeFastQueryThresholdMs = 100;
+    JdbcTracing.setExcludeFastQueryThresholdMs(excludeFastQueryThresholdMs);
+
+    final Integer result = JdbcTracingUtils.call(
+        "FastQuery",
+        () -> 1,
+        null,
+        ConnectionInfo.UNKNOWN_CONNECTION_INFO,
+        false,
+        Collections.emptySet(),
+        mockTracer);
+    assertEquals(Integer.valueOf(1), result);
+
+    final List<MockSpan> finishedSpans = mockTracer.finishedSpans();
+    assertEquals("Should have traced a query execution", 1, finishedSpans.size());
+    final MockSpan fastQuerySpan = finishedSpans.get(0);
+    assertEquals("Span should be tagged with sampling.priority=0", 0,
+        fastQuerySpan.tags().get(JdbcTracingUtils.SAMPLING_PRIORITY.getKey()));
+    final long durationNanos = (Long) fastQuerySpan.tags()
+        .get(JdbcTracingUtils.DURATION_NANOS.getKey());
+    assertTrue(durationNanos >= 0);
+  }
+
+  @Test
+  public void lazyStatementTag() throws Exception {
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.setConfig(new JdbcTracingConfig.Builder()
+        .excludeFastQueryThresholdMs(100)
+        .slowQueryThresholdMs(100)
+        .lazyStatementTag(true)
+        .build());
+    try {
+      JdbcTracingUtils.execute("FastQuery", () -> {
+      }, "SELECT 1", ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, mockTracer);
+      JdbcTracingUtils.execute("SlowQuery", () -> Thread.sleep(150), "SELECT 2",
+          ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, mockTracer);
+      try {
+        JdbcTracingUtils.execute("FailedQuery", () -> {
+          throw new IllegalStateException();
+        }, "SELECT 3", ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, mockTracer);
+      } catch (IllegalStateException ignored) {
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    final List<MockSpan> finishedSpans = mockTracer.finishedSpans();
+    assertEquals(3, finishedSpans.size());
+    assertNull("Dropped span has no statement",
+        finishedSpans.get(0).tags().get(Tags.DB_STATEMENT.getKey()));
+    assertEquals("SELECT 2", finishedSpans.get(1).tags().get(Tags.DB_STATEMENT.getKey()));
+    assertEquals("SELECT 3", finishedSpans.get(2).tags().get(Tags.DB_STATEMENT.getKey()));
+  }
+
+  @Test
+  public void rateLimitSpans() throws Exception {
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.setConfig(new JdbcTracingConfig.Builder()
+        .maxSpansPerSecond(2)
+        .build());
+    final long rateLimited = JdbcTracing.getRateLimitedSpans();
+    try {
+      for (int i = 0; i < 5; i++) {
+        JdbcTracingUtils.execute("Query", () -> {
+        }, "SELECT 1", ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, mockTracer);
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    assertEquals(2, mockTracer.finishedSpans().size());
+    assertEquals(3, JdbcTracing.getRateLimitedSpans() - rateLimited);
+  }
+
+  @Test
+  public void normalizeStatements() throws Exception {
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.normalizeStatements(true));
+    try {
+      JdbcTracingUtils.execute("Query", () -> {
+      }, "SELECT * FROM t WHERE id IN (1, 2)", ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null,
+          mockTracer);
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    final MockSpan span = mockTracer.finishedSpans().get(0);
+    assertEquals("SELECT * FROM t WHERE id IN (?)", span.tags().get(Tags.DB_STATEMENT.getKey()));
+    assertEquals(SqlNormalizer.normalize("SELECT * FROM t WHERE id IN (?)").getFingerprint(),
+        span.tags().get(JdbcTracingUtils.STATEMENT_FINGERPRINT.getKey()));
+  }
+
+  @Test
+  public void aggregateStatements() throws Exception {
+    final MockTracer tracer = new MockTracer(
+        new StatementSummaryScopeManager(new ThreadLocalScopeManager()));
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.aggregateStatements(true));
+    final MockSpan parent = tracer.buildSpan("parent").start();
+    try (Scope ignored = tracer.activateSpan(parent)) {
+      for (int i = 0; i < 3; i++) {
+        final int id = i;
+        JdbcTracingUtils.call("Query", () -> id, "SELECT * FROM t WHERE id = " + id,
+            ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, tracer);
+      }
+      try {
+        JdbcTracingUtils.execute("Update", () -> {
+          throw new IllegalStateException();
+        }, "UPDATE t SET a = 1", ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, tracer);
+      } catch (IllegalStateException expected) {
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+    parent.finish();
+
+    final List<MockSpan> finishedSpans = tracer.finishedSpans();
+    assertEquals("Statements are not reported as spans", 1, finishedSpans.size());
+    assertEquals(1, parent.logEntries().size());
+    final Map<String, ?> fields = parent.logEntries().get(0).fields();
+    assertEquals(StatementSummary.EVENT, fields.get("event"));
+    final String select = SqlNormalizer.normalize("SELECT * FROM t WHERE id = ?").getFingerprint();
+    assertEquals("SELECT * FROM t WHERE id = ?", fields.get(select + ".statement"));
+    assertEquals(3, fields.get(select + ".count"));
+    assertEquals(0, fields.get(select + ".errors"));
+    final String update = SqlNormalizer.normalize("UPDATE t SET a = ?").getFingerprint();
+    assertEquals(1, fields.get(update + ".count"));
+    assertEquals(1, fields.get(update + ".errors"));
+  }
+
+  @Test
+  public void aggregateStatementsOfNestedActivations() throws Exception {
+    final MockTracer tracer = new MockTracer(
+        new StatementSummaryScopeManager(new ThreadLocalScopeManager()));
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.aggregateStatements(true));
+    final MockSpan parent = tracer.buildSpan("parent").start();
+    try (Scope outer = tracer.activateSpan(parent)) {
+      for (int i = 0; i < 2; i++) {
+        try (Scope inner = tracer.activateSpan(parent)) {
+          JdbcTracingUtils.call("Query", () -> 1, "SELECT * FROM t",
+              ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, tracer);
+        }
+      }
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+    parent.finish();
+
+    assertEquals(1, parent.logEntries().size());
+    final String select = SqlNormalizer.normalize("SELECT * FROM t").getFingerprint();
+    assertEquals(2, parent.logEntries().get(0).fields().get(select + ".count"));
+  }
+
+  @Test
+  public void aggregateStatementsOfTransaction() throws Exception {
+    final MockTracer tracer = new MockTracer(
+        new StatementSummaryScopeManager(new ThreadLocalScopeManager()));
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.aggregateStatements(true).traceTransactions(true));
+    try (Connection connection = new TracingConnection(
+        DriverManager.getConnection("jdbc:h2:mem:summary"), ConnectionInfo.UNKNOWN_CONNECTION_INFO,
+        false, null, tracer)) {
+      Statement statement = connection.createStatement();
+      statement.executeUpdate("CREATE TABLE employer (id INTEGER)");
+      connection.setAutoCommit(false);
+      for (int i = 0; i < 3; i++) {
+        statement.executeUpdate("INSERT INTO employer VALUES (" + i + ")");
+      }
+      connection.commit();
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    final MockSpan transaction = tracer.finishedSpans().stream()
+        .filter(span -> "Transaction".equals(span.operationName()))
+        .findFirst().get();
+    assertEquals(1, transaction.logEntries().size());
+    final String insert = SqlNormalizer.normalize("INSERT INTO employer VALUES (?)")
+        .getFingerprint();
+    assertEquals(3, transaction.logEntries().get(0).fields().get(insert + ".count"));
+  }
+
+  @Test
+  public void aggregateStatementsOfSpanReleasedOnAnotherThread() throws Exception {
+    final MockTracer tracer = new MockTracer(
+        new StatementSummaryScopeManager(new ThreadLocalScopeManager()));
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.aggregateStatements(true));
+    final MockSpan parent = tracer.buildSpan("parent").start();
+    try {
+      StatementSummaryScopeManager.retain(tracer, parent);
+      try (Scope ignored = tracer.activateSpan(parent)) {
+        JdbcTracingUtils.call("Query", () -> 1, "SELECT * FROM t",
+            ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, tracer);
+      }
+      final Thread finisher = new Thread(() -> {
+        StatementSummaryScopeManager.release(tracer, parent);
+        parent.finish();
+      });
+      finisher.start();
+      finisher.join();
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    assertEquals(1, parent.logEntries().size());
+    final String select = SqlNormalizer.normalize("SELECT * FROM t").getFingerprint();
+    assertEquals(1, parent.logEntries().get(0).fields().get(select + ".count"));
+  }
+
+  @Test
+  public void aggregateStatementsOfScopesClosedOutOfOrder() throws Exception {
+    final MockTracer tracer = new MockTracer(
+        new StatementSummaryScopeManager(new ThreadLocalScopeManager()));
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.aggregateStatements(true));
+    final MockSpan first = tracer.buildSpan("first").start();
+    final MockSpan second = tracer.buildSpan("second").start();
+    try {
+      final Scope firstScope = tracer.activateSpan(first);
+      final Scope secondScope = tracer.activateSpan(second);
+      firstScope.close();
+      secondScope.close();
+      JdbcTracingUtils.call("Query", () -> 1, "SELECT * FROM t",
+          ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, tracer);
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    assertEquals("Statement without active span is reported as a span", 1,
+        tracer.finishedSpans().size());
+    assertEquals("Query", tracer.finishedSpans().get(0).operationName());
+  }
+
+  @Test
+  public void swapConfigAtRuntime() throws Exception {
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    try {
+      JdbcTracing.setConfig(new JdbcTracingConfig.Builder()
+          .slowQueryThresholdMs(10)
+          .build());
+      assertEquals(0, JdbcTracing.getExcludeFastQueryThresholdMs());
+
+      JdbcTracing.setTraceEnabled(false);
+      assertEquals("Setters keep the other properties", 10,
+          JdbcTracing.getSlowQueryThresholdMs());
+      JdbcTracing.setTraceEnabled(true);
+
+      JdbcTracingUtils.execute(
+          "SlowQuery",
+          () -> Thread.sleep(20),
+          null,
+          ConnectionInfo.UNKNOWN_CONNECTION_INFO,
+          false,
+          Collections.emptySet(),
+          mockTracer);
+
+      final List<MockSpan> finishedSpans = mockTracer.finishedSpans();
+      assertEquals(1, finishedSpans.size());
+      assertTrue("Span should be tagged slow",
+          finishedSpans.get(0).tags().containsKey(JdbcTracingUtils.SLOW.getKey()));
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+  }
+
+  @Test
+  public void sqlOperationNames() throws Exception {
+    final MockTracer tracer = new MockTracer();
+    JdbcTracing.updateConfig(builder -> builder.sqlOperationNames(true));
+    try {
+      JdbcTracingUtils.execute("Query", () -> {
+      }, "SELECT * FROM orders WHERE id = 1", ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null,
+          tracer);
+      JdbcTracingUtils.execute("Update", () -> {
+      }, "{call proc()}", ConnectionInfo.UNKNOWN_CONNECTION_INFO, false, null, tracer);
+    } finally {
+      JdbcTracing.updateConfig(builder -> builder.sqlOperationNames(false));
+    }
+
+    final List<MockSpan> spans = tracer.finishedSpans();
+    assertEquals("SELECT orders", spans.get(0).operationName());
+    assertEquals("Update", spans.get(1).operationName());
+  }
+
+
+  @Test
+  public void metrics() throws Exception {
+    final MockTracer tracer = new MockTracer();
+    final ConnectionInfo connectionInfo = new ConnectionInfo.Builder("metrics", 1)
+        .dbType("h2").build();
+    JdbcTracing.updateConfig(builder -> builder.metricsEnabled(true));
+    try {
+      JdbcTracingUtils.execute("Query", () -> {
+      }, "SELECT 1", connectionInfo, false, null, tracer);
+      // recorded although no span is created
+      JdbcTracingUtils.call("Query", () -> 1, "SELECT 1", connectionInfo, true, null, tracer);
+    } finally {
+      JdbcTracing.updateConfig(builder -> builder.metricsEnabled(false));
+    }
+
+    assertEquals(1, tracer.finishedSpans().size());
+    final LatencyHistogramMXBean latency = JdbcMetrics
+        .getLatency(connectionInfo.getPeerService(), "Query");
+    assertEquals(2, latency.getCount());
+    assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(
+        new ObjectName("io.opentracing.contrib.jdbc:type=Latency,peer="
+            + ObjectName.quote(connectionInfo.getPeerService()) + ",operation=\"Query\""),
+        "Count"));
+  }
+
+  @Test
+  public void ignoredStatementsAreNotRecordedInMetrics() throws Exception {
+    final ConnectionInfo connectionInfo = new ConnectionInfo.Builder("ignored_metrics", 1)
+        .dbType("h2").build();
+    final Set<String> ignoreStatements = Collections.singleton("SELECT 1");
+    JdbcMetrics.reset();
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.metricsEnabled(true).topStatements(16));
+    try {
+      final MockTracer tracer = new MockTracer();
+      JdbcTracingUtils.call("Query", () -> 1, "SELECT 1", connectionInfo, false,
+          ignoreStatements, tracer);
+      JdbcTracingUtils.execute("Query", () -> {
+      }, "SELECT 1", connectionInfo, false, ignoreStatements, tracer);
+      // not traced, as no span is active
+      JdbcTracingUtils.call("Query", () -> 1, "SELECT 1", connectionInfo, true,
+          ignoreStatements, tracer);
+      JdbcTracingUtils.execute("Query", () -> {
+      }, "SELECT 1", connectionInfo, true, ignoreStatements, tracer);
+
+      assertTrue(tracer.finishedSpans().isEmpty());
+      assertNull(JdbcMetrics.getLatency(connectionInfo.getPeerService(), "Query"));
+      final String fingerprint = SqlNormalizer.normalize("SELECT 1").getFingerprint();
+      assertTrue(JdbcMetrics.getTopStatements().stream()
+          .noneMatch(statistics -> fingerprint.equals(statistics.getFingerprint())));
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+  }
+
+  @Test
+  public void resetMetrics() throws Exception {
+    final ConnectionInfo connectionInfo = new ConnectionInfo.Builder("reset", 1)
+        .dbType("h2").build();
+    final ObjectName name = new ObjectName("io.opentracing.contrib.jdbc:type=Latency,peer="
+        + ObjectName.quote(connectionInfo.getPeerService()) + ",operation=\"Query\"");
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.metricsEnabled(true));
+    try {
+      JdbcTracingUtils.call("Query", () -> 1, "SELECT 1", connectionInfo, false, null,
+          new MockTracer());
+      assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+      JdbcMetrics.reset();
+      assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+      assertNull(JdbcMetrics.getLatency(connectionInfo.getPeerService(), "Query"));
+
+      JdbcTracingUtils.call("Query", () -> 1, "SELECT 1", connectionInfo, false, null,
+          new MockTracer());
+      assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+      assertEquals(1, JdbcMetrics.getLatency(connectionInfo.getPeerService(), "Query")
+          .getCount());
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+  }
+
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucketsCoverValues() {
+    for (long micros = 0; micros < 100_000; micros++) {
+      final int bucket = LatencyHistogram.bucket(micros);
+      assertTrue(micros <= LatencyHistogram.bucketUpperBound(bucket));
+      assertTrue(bucket == 0 || micros > LatencyHistogram.bucketUpperBound(bucket - 1));
+    }
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void percentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i * 10));
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(10_000, histogram.getMaxMicros());
+    assertWithin(5_000, histogram.getP50Micros());
+    assertWithin(9_900, histogram.getP99Micros());
+    assertWithin(9_990, histogram.getP999Micros());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual + " != " + expected, Math.abs(actual - expected) <= expected / 16);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class SqlNormalizerTest {
+
+  @Test
+  public void replacesLiterals() {
+    assertEquals("SELECT * FROM t WHERE name = ? AND id = ? AND price > ?",
+        SqlNormalizer.normalizeText(
+            "SELECT * FROM t WHERE name = 'it''s' AND id = 42 AND price > 1.5e3"));
+    assertEquals("INSERT INTO t2 (c1, c2) VALUES (?, ?)",
+        SqlNormalizer.normalizeText("INSERT INTO t2 (c1, c2) VALUES (0x1F, N'abc')"));
+  }
+
+  @Test
+  public void keepsIdentifiers() {
+    assertEquals("SELECT t1.col2, \"Col 3\" FROM schema1.t1 WHERE x = :p1",
+        SqlNormalizer.normalizeText("SELECT t1.col2, \"Col 3\" FROM schema1.t1 WHERE x = :p1"));
+  }
+
+  @Test
+  public void collapsesInLists() {
+    assertEquals("SELECT * FROM t WHERE id IN (?) AND name in (?)",
+        SqlNormalizer.normalizeText(
+            "SELECT * FROM t WHERE id IN (1, 2, 3) AND name in ('a','b')"));
+    assertEquals("SELECT * FROM t WHERE id IN (?)",
+        SqlNormalizer.normalizeText("SELECT * FROM t WHERE id IN (?, ?, ?)"));
+    assertEquals("SELECT * FROM t WHERE id IN (SELECT id FROM t2)",
+        SqlNormalizer.normalizeText("SELECT * FROM t WHERE id IN (SELECT id FROM t2)"));
+  }
+
+  @Test
+  public void stripsCommentsAndWhitespace() {
+    assertEquals("SELECT a FROM t WHERE b = ?",
+        SqlNormalizer.normalizeText("  SELECT /* hint */ a\n  FROM t -- comment\n WHERE b = 7 "));
+  }
+
+  @Test
+  public void fingerprintIsStable() {
+    final NormalizedSql first = SqlNormalizer.normalize("SELECT * FROM t WHERE id = 1");
+    final NormalizedSql second = SqlNormalizer.normalize("SELECT * FROM t WHERE id = 2");
+    assertEquals(first.getSql(), second.getSql());
+    assertEquals(first.getFingerprint(), second.getFingerprint());
+    assertEquals(16, first.getFingerprint().length());
+    assertNotEquals(first.getFingerprint(),
+        SqlNormalizer.normalize("SELECT * FROM t2 WHERE id = 1").getFingerprint());
+    assertSame(first, SqlNormalizer.normalize("SELECT * FROM t WHERE id = 1"));
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Locale;
+import org.junit.Test;
+
+public class SqlOperationNamesTest {
+
+  @Test
+  public void parsesCommandAndTable() {
+    assertEquals("SELECT orders",
+        SqlOperationNames.parse("SELECT id, (SELECT 1 FROM dual) FROM Orders WHERE id = 1"));
+    assertEquals("SELECT shop.orders",
+        SqlOperationNames.parse(" /* hint */ select * from shop.\"orders\" o"));
+    assertEquals("INSERT order_items",
+        SqlOperationNames.parse("INSERT INTO order_items (id) VALUES (?)"));
+    assertEquals("UPDATE orders", SqlOperationNames.parse("update `orders` set a = 'FROM x'"));
+    assertEquals("DELETE orders", SqlOperationNames.parse("DELETE FROM [orders] WHERE id = ?"));
+    assertEquals("CREATE", SqlOperationNames.parse("CREATE TABLE orders (id INTEGER)"));
+    assertEquals("SELECT", SqlOperationNames.parse("SELECT 1"));
+    assertEquals("SELECT", SqlOperationNames.parse("SELECT * FROM (SELECT 1)"));
+    assertNull(SqlOperationNames.parse("  "));
+    assertNull(SqlOperationNames.parse("{call proc()}"));
+  }
+
+  @Test
+  public void ignoresUnknownCommands() {
+    assertEquals("COMMIT", SqlOperationNames.parse("commit"));
+    assertNull(SqlOperationNames.parse("SELEC * FROM orders"));
+    assertNull(SqlOperationNames.parse("FOO bar"));
+    assertNull(SqlOperationNames.operationName("SELEKT 1", Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void parsesIndependentlyOfTheDefaultLocale() {
+    final Locale previous = Locale.getDefault();
+    Locale.setDefault(new Locale("tr"));
+    try {
+      assertEquals("INSERT items", SqlOperationNames.parse("insert into ITEMS values (1)"));
+      assertEquals("SELECT invoices", SqlOperationNames.parse("select * from INVOICES"));
+    } finally {
+      Locale.setDefault(previous);
+    }
+  }
+
+  @Test
+  public void boundsNames() {
+    assertEquals("SELECT bound_a",
+        SqlOperationNames.operationName("SELECT * FROM bound_a", Integer.MAX_VALUE));
+    assertEquals("SELECT bound_a", SqlOperationNames.operationName("SELECT * FROM bound_a", 0));
+    assertNull(SqlOperationNames.operationName("SELECT * FROM bound_b", 0));
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class TopStatementsTest {
+
+  @Test
+  public void keepsHeaviestStatements() {
+    final TopStatements top = new TopStatements(16);
+    final NormalizedSql heavy = SqlNormalizer.normalize("SELECT * FROM heavy WHERE id = 1");
+    final NormalizedSql frequent = SqlNormalizer.normalize("SELECT * FROM frequent");
+    final long now = System.nanoTime();
+    for (int i = 0; i < 10_000; i++) {
+      top.record(SqlNormalizer.normalize("SELECT * FROM t" + i), 1_000, now);
+      top.record(frequent, 2_000, now);
+      if (i % 100 == 0) {
+        top.record(heavy, 10_000_000, now);
+      }
+    }
+
+    final List<StatementStatistics> statistics = top.getTopStatements(now);
+    assertTrue(statistics.size() <= 16);
+    assertEquals(heavy.getFingerprint(), statistics.get(0).getFingerprint());
+    assertEquals(100, statistics.get(0).getCount());
+    assertEquals(1_000_000, statistics.get(0).getTotalMicros());
+    assertEquals(10_000, statistics.get(0).getMaxMicros());
+    assertEquals(frequent.getFingerprint(), statistics.get(1).getFingerprint());
+    assertEquals("SELECT * FROM frequent", statistics.get(1).getStatement());
+  }
+
+  @Test
+  public void keepsHeaviestStatementsOfSimilarHashes() {
+    final TopStatements top = new TopStatements(8);
+    // statements whose fingerprint hashes share their low bits, as a sketch partitioned by hash
+    // would have to keep them together
+    final List<NormalizedSql> heavy = new ArrayList<>();
+    final Set<String> heavyFingerprints = new HashSet<>();
+    for (int i = 0; heavy.size() < 4; i++) {
+      final NormalizedSql sql = SqlNormalizer.normalize("SELECT * FROM heavy" + i);
+      final int hash = sql.getFingerprint().hashCode();
+      if (((hash ^ (hash >>> 16)) & 7) == 0) {
+        heavy.add(sql);
+        heavyFingerprints.add(sql.getFingerprint());
+      }
+    }
+    final long now = System.nanoTime();
+    for (int i = 0; i < 1_000; i++) {
+      top.record(SqlNormalizer.normalize("SELECT * FROM t" + i), 1_000, now);
+      top.record(heavy.get(i % 4), 1_000_000, now);
+    }
+
+    final Set<String> fingerprints = new HashSet<>();
+    for (StatementStatistics statistics : top.getTopStatements(now).subList(0, 4)) {
+      fingerprints.add(statistics.getFingerprint());
+    }
+    assertEquals(heavyFingerprints, fingerprints);
+  }
+
+  @Test
+  public void keepsHeaviestStatementsRecordedConcurrently() throws Exception {
+    final TopStatements top = new TopStatements(16);
+    final NormalizedSql heavy = SqlNormalizer.normalize("SELECT * FROM heavy");
+    final long now = System.nanoTime();
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      final int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 5_000; i++) {
+          top.record(SqlNormalizer.normalize("SELECT * FROM t" + thread + '_' + i), 1_000, now);
+          if (i % 10 == 0) {
+            top.record(heavy, 1_000_000, now);
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    final List<StatementStatistics> statistics = top.getTopStatements(now);
+    assertTrue(statistics.size() <= 16);
+    assertEquals(heavy.getFingerprint(), statistics.get(0).getFingerprint());
+  }
+
+  @Test
+  public void decays() {
+    final TopStatements top = new TopStatements(4);
+    final NormalizedSql sql = SqlNormalizer.normalize("SELECT 1");
+    final long now = System.nanoTime();
+    for (int i = 0; i < 4; i++) {
+      top.record(sql, 1_000, now);
+    }
+
+    assertEquals(4, top.getTopStatements(now).get(0).getCount());
+    assertEquals(2,
+        top.getTopStatements(now + TopStatements.DECAY_INTERVAL_NANOS).get(0).getCount());
+    assertTrue(top.getTopStatements(now + 10 * TopStatements.DECAY_INTERVAL_NANOS).isEmpty());
+  }
+}
@@ -21,8 +21,12 @@ import static org.junit.Assert.assertTrue;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
 import io.opentracing.tag.Tags;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.FutureTask;
+import javax.management.ObjectName;
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.junit.Test;
 
@@ -80,6 +84,69 @@ public class TracingDataSourceTest {
         finishedSpan.tags().get(Tags.DB_TYPE.getKey()));
   }
 
+  @Test
+  public void records_waiting_for_saturated_pool() throws Exception {
+    final BasicDataSource dataSource = getDataSource();
+    dataSource.setMaxTotal(1);
+    final MockTracer mockTracer = new MockTracer();
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    try (final TracingDataSource tracingDataSource = new TracingDataSource(mockTracer,
+        dataSource)) {
+      final ConnectionAcquisitionMXBean acquisition = tracingDataSource.getConnectionAcquisition();
+      final Connection held = tracingDataSource.getConnection();
+      JdbcTracing.updateConfig(builder -> builder.poolSaturationThresholdMs(20));
+      final FutureTask<Connection> waiter = new FutureTask<>(tracingDataSource::getConnection);
+      new Thread(waiter).start();
+      while (acquisition.getWaitingThreads() == 0) {
+        Thread.sleep(1);
+      }
+      Thread.sleep(100);
+      held.close();
+      waiter.get().close();
+
+      assertEquals(0, acquisition.getWaitingThreads());
+      assertEquals(1, acquisition.getPeakWaitingThreads());
+      assertEquals(2, acquisition.getCount());
+      assertEquals(1, acquisition.getSaturatedCount());
+      assertTrue(acquisition.getMaxMicros() >= 100_000);
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+
+    final MockSpan waited = mockTracer.finishedSpans().stream()
+        .filter(span -> span.tags().containsKey(JdbcTracingUtils.POOL_SATURATED.getKey()))
+        .findFirst().get();
+    assertEquals("AcquireConnection", waited.operationName());
+    assertEquals(1, waited.tags().get(JdbcTracingUtils.POOL_WAITERS.getKey()));
+  }
+
+  @Test
+  public void registers_acquisition_on_first_connection() throws Exception {
+    final MockTracer mockTracer = new MockTracer();
+    final JdbcTracingConfig previous = JdbcTracing.getConfig();
+    JdbcTracing.updateConfig(builder -> builder.metricsEnabled(true));
+    try {
+      final int before = acquisitionNames().size();
+      try (final TracingDataSource first = new TracingDataSource(mockTracer, getDataSource());
+          final TracingDataSource second = new TracingDataSource(mockTracer, getDataSource())) {
+        assertEquals(before, acquisitionNames().size());
+
+        first.getConnection().close();
+        second.getConnection().close();
+        first.getConnection().close();
+        assertEquals(before + 2, acquisitionNames().size());
+      }
+      assertEquals(before, acquisitionNames().size());
+    } finally {
+      JdbcTracing.setConfig(previous);
+    }
+  }
+
+  private static Set<ObjectName> acquisitionNames() throws Exception {
+    return ManagementFactory.getPlatformMBeanServer().queryNames(
+        new ObjectName(JdbcMetrics.DOMAIN + ":type=ConnectionAcquisition,*"), null);
+  }
+
   private static BasicDataSource getDataSource() {
     BasicDataSource dataSource = new BasicDataSource();
     dataSource.setUrl("jdbc:h2:mem:dataSourceTest");
@@ -16,11 +16,19 @@ package io.opentracing.contrib.jdbc;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import io.opentracing.Tracer;
 import io.opentracing.mock.MockTracer;
 import io.opentracing.util.GlobalTracer;
 import io.opentracing.util.GlobalTracerTestUtil;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -29,6 +37,7 @@ public class TracingDriverTest {
   @Before
   public void before() {
     GlobalTracerTestUtil.resetGlobalTracer();
+    TracingDriver.invalidateDriverCache();
   }
 
   @Test
@@ -37,6 +46,88 @@ public class TracingDriverTest {
     assertNotNull(tracingDriver.getTracer());
   }
 
+  @Test
+  public void testFindDriverIsCached() throws Exception {
+    final Driver fake = fakeDriver();
+    final TracingDriver tracingDriver = new TracingDriver();
+    DriverManager.registerDriver(fake);
+    try {
+      final long now = System.nanoTime();
+      assertSame(fake, tracingDriver.findDriver("jdbc:fakecache:one", now));
+      assertSame(fake, tracingDriver.findDriver("jdbc:fakecache:two", now));
+    } finally {
+      DriverManager.deregisterDriver(fake);
+    }
+  }
+
+  @Test
+  public void testFindDriverForgetsDeregisteredDriverOnceExpired() throws Exception {
+    final Driver fake = fakeDriver();
+    final TracingDriver tracingDriver = new TracingDriver();
+    DriverManager.registerDriver(fake);
+    final long now = System.nanoTime();
+    try {
+      assertSame(fake, tracingDriver.findDriver("jdbc:fakecache:one", now));
+    } finally {
+      DriverManager.deregisterDriver(fake);
+    }
+
+    try {
+      tracingDriver.findDriver("jdbc:fakecache:one", now + TracingDriver.DRIVER_CACHE_TTL_NANOS);
+      fail();
+    } catch (SQLException expected) {
+    }
+  }
+
+  @Test
+  public void testFindDriverForgetsDeregisteredDriverOnceInvalidated() throws Exception {
+    final Driver fake = fakeDriver();
+    final TracingDriver tracingDriver = new TracingDriver();
+    DriverManager.registerDriver(fake);
+    try {
+      assertSame(fake, tracingDriver.findDriver("jdbc:fakecache:one"));
+    } finally {
+      DriverManager.deregisterDriver(fake);
+    }
+
+    TracingDriver.invalidateDriverCache();
+    try {
+      tracingDriver.findDriver("jdbc:fakecache:one");
+      fail();
+    } catch (SQLException expected) {
+    }
+  }
+
+  private Driver fakeDriver() {
+    return (Driver) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[]{Driver.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "acceptsURL":
+              return ((String) args[0]).startsWith("jdbc:fakecache:");
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            default:
+              return null;
+          }
+        });
+  }
+
+  @Test
+  public void testConnectHonorsOverriddenUrlExtraction() throws Exception {
+    final TracingDriver tracingDriver = new TracingDriver() {
+      @Override
+      protected String extractRealUrl(String url) {
+        return "jdbc:h2:mem:custom_url_extraction";
+      }
+    };
+    tracingDriver.setTracer(new MockTracer());
+    try (Connection connection = tracingDriver.connect("jdbc:tracing:custom", new Properties())) {
+      assertEquals("jdbc:h2:mem:custom_url_extraction", connection.getMetaData().getURL());
+    }
+  }
+
   @Test
   public void testExplicitTracer() {
     Tracer tracer = new MockTracer();
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017-2021 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class TracingUrlTest {
+
+  private static final String PREFIX = "jdbc:tracing:";
+
+  private static final String[] URLS = {
+      "jdbc:tracing:h2:mem:test",
+      "jdbc:tracing:h2:mem:test?traceWithActiveSpanOnly=true",
+      "jdbc:tracing:h2:mem:test;traceWithActiveSpanOnly=false;;DB_CLOSE_DELAY=-1",
+      "jdbc:tracing:mysql://host/db?traceWithActiveSpanOnly=true&useSSL=false",
+      "jdbc:tracing:h2:mem:test?ignoreForTracing=\"SELECT 1\";ignoreForTracing=\"SELECT 2\"",
+      "jdbc:tracing:h2:mem:test?ignoreForTracing=\"SELECT * FROM \\\"TEST\\\"\";MODE=MySQL",
+      "jdbc:tracing:h2:mem:test?ignoreForTracing=\"unterminated \\\"",
+      "jdbc:tracing:h2:mem:test?ignoreForTracing=\"open",
+      "jdbc:h2:mem:test?traceWithActiveSpanOnly=maybe",
+  };
+
+  @Test
+  public void matchesRegularExpressions() {
+    for (String url : URLS) {
+      final TracingUrl tracingUrl = TracingUrl.parse(url, PREFIX);
+      assertEquals(url, regexRealUrl(url), tracingUrl.getRealUrl());
+      assertEquals(url, regexIgnoredStatements(url), tracingUrl.getIgnoreStatements());
+      assertEquals(url, url.contains(TracingDriver.WITH_ACTIVE_SPAN_ONLY),
+          tracingUrl.isWithActiveSpanOnly());
+    }
+  }
+
+  private static String regexRealUrl(String url) {
+    String extracted = url.startsWith(PREFIX) ? url.replace(PREFIX, "jdbc:") : url;
+    return extracted.replaceAll(TracingDriver.TRACE_WITH_ACTIVE_SPAN_ONLY + "=(true|false)[;]*", "")
+        .replaceAll(TracingDriver.IGNORE_FOR_TRACING_REGEX, "")
+        .replaceAll("\\?$", "");
+  }
+
+  private static Set<String> regexIgnoredStatements(String url) {
+    final Matcher matcher = Pattern.compile(TracingDriver.IGNORE_FOR_TRACING_REGEX).matcher(url);
+    final Set<String> results = new HashSet<>();
+    while (matcher.find()) {
+      results.add(matcher.group(1).replace("\\\"", "\""));
+    }
+    return results;
+  }
+}
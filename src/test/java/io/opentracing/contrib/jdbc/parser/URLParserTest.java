@@ -14,6 +14,7 @@
 package io.opentracing.contrib.jdbc.parser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import io.opentracing.contrib.jdbc.ConnectionInfo;
 import org.junit.Test;
@@ -320,4 +321,38 @@ public class URLParserTest {
     assertEquals("mdb.host:3306", connectionInfo.getDbPeer());
     assertEquals("mdbdb[mariadb(mdb.host:3306)]", connectionInfo.getPeerService());
   }
+
+  @Test
+  public void testParseIsCachedUntilParserRegistered() {
+    final String url = "jdbc:cachetest://host/db";
+    assertEquals(ConnectionInfo.UNKNOWN_CONNECTION_INFO, URLParser.parse(url));
+
+    final ConnectionInfo custom = new ConnectionInfo.Builder("host", 1).dbType("cachetest").build();
+    URLParser.registerConnectionParser("jdbc:cachetest", ignored -> custom);
+    assertSame(custom, URLParser.parse(url));
+    assertSame(URLParser.parse(url), URLParser.parse(url));
+  }
+
+  @Test
+  public void testFirstRegisteredPrefixIgnoringCase() {
+    final ConnectionInfo shorter = new ConnectionInfo.Builder("short", 1).dbType("short").build();
+    final ConnectionInfo longer = new ConnectionInfo.Builder("long", 1).dbType("long").build();
+    URLParser.registerConnectionParser("jdbc:Overlap", ignored -> shorter);
+    URLParser.registerConnectionParser("jdbc:overlap:longer", ignored -> longer);
+    assertSame(shorter, URLParser.parse("JDBC:OVERLAP:LONGER:test"));
+
+    final ConnectionInfo first = new ConnectionInfo.Builder("first", 1).dbType("first").build();
+    final ConnectionInfo second = new ConnectionInfo.Builder("second", 1).dbType("second").build();
+    URLParser.registerConnectionParser("jdbc:ordered:longer", ignored -> first);
+    URLParser.registerConnectionParser("jdbc:ordered", ignored -> second);
+    assertSame(first, URLParser.parse("jdbc:ordered:longer:test"));
+    assertSame(second, URLParser.parse("jdbc:ordered:test"));
+
+    // overriding a prefix keeps its place in the registration order
+    final ConnectionInfo replaced = new ConnectionInfo.Builder("new", 1).dbType("new").build();
+    URLParser.registerConnectionParser("jdbc:ordered", ignored -> replaced);
+    assertSame(first, URLParser.parse("jdbc:ordered:longer:test"));
+    assertSame(replaced, URLParser.parse("jdbc:ordered:test"));
+  }
+
 }